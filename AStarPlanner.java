@@ -0,0 +1,235 @@
+package uk.ac.ed.inf;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Plans routes with an A* search over the positions the drone can actually
+ * reach, i.e. sequences of moves of length MOVE_LENGTH in any of the 36
+ * allowed directions. Moves that leave the confined area or cross a no-fly
+ * zone are never expanded, so the route found needs no landmarks and no
+ * moves are ever discarded.
+ *
+ * Positions closer to each other than the search resolution are treated as
+ * the same search state and only one position is expanded for each
+ * state, so the route found has the fewest moves only up to that snapping:
+ * a route through a position snapped away may need fewer. The finer the
+ * resolution, the closer it gets to the fewest moves, at the cost of more
+ * states.
+ *
+ * By default the moves left to the goal are bounded by the straight-line
+ * distance to it, which does not account for the no-fly zones, so every
+ * position on the near side of a zone between the drone and the goal
+ * looks promising and is expanded. If the planner is given the grid of a
+ * cost field, the bound comes from a field of the moves towards the goal
+ * worked out on that grid, which counts the detours around the zones. The
+ * fields of the goals planned to most recently are kept.
+ */
+public class AStarPlanner implements RoutePlanner {
+
+    private final NoFlyZoneIndex noFlyZoneIndex;
+    private final double resolution;
+    private final int maxExpansions;
+    //Grid the fields towards the goals are worked out on, null to bound by the straight-line distance only.
+    private final HomeCostField goalFieldGrid;
+    private final Map<List<Double>, HomeCostField> goalFields =
+            new LinkedHashMap<>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<List<Double>, HomeCostField> eldest) {
+                    return size() > Constants.ASTAR_GOAL_FIELDS;
+                }
+            };
+    //Field towards the goal of the current call, or null.
+    private HomeCostField goalField;
+
+    //Search state of the current call, kept between calls to avoid reallocating it.
+    private double[] lng = new double[1024];
+    private double[] lat = new double[1024];
+    private int[] parent = new int[1024];
+    private int[] direction = new int[1024];
+    private int[] movesMade = new int[1024];
+    private int[] estimate = new int[1024];
+    private int nodes;
+    private int[] heap = new int[1024];
+    private int heapSize;
+
+    /**
+     * Class constructor specifying the no-fly zones and how fine the search is.
+     *
+     * @param noFlyZoneIndex spatial index of the no-fly zones to avoid
+     * @param resolution    positions closer than this (in degrees) are
+     *                      considered the same search state
+     * @param maxExpansions number of positions the search may expand
+     *                      before giving up
+     */
+    protected AStarPlanner(NoFlyZoneIndex noFlyZoneIndex, double resolution, int maxExpansions) {
+        this(noFlyZoneIndex, resolution, maxExpansions, null);
+    }
+
+    /**
+     * Class constructor specifying the no-fly zones, how fine the search is
+     * and the grid the fields towards the goals are worked out on.
+     *
+     * @param noFlyZoneIndex spatial index of the no-fly zones to avoid
+     * @param resolution    positions closer than this (in degrees) are
+     *                      considered the same search state
+     * @param maxExpansions number of positions the search may expand
+     *                      before giving up
+     * @param goalFieldGrid a cost field for the same no-fly zones whose grid
+     *                      the fields towards the goals are worked out on,
+     *                      or null to bound the moves left by the
+     *                      straight-line distance only
+     */
+    protected AStarPlanner(NoFlyZoneIndex noFlyZoneIndex, double resolution, int maxExpansions,
+                           HomeCostField goalFieldGrid) {
+        this.noFlyZoneIndex = noFlyZoneIndex;
+        this.resolution = resolution;
+        this.maxExpansions = maxExpansions;
+        this.goalFieldGrid = goalFieldGrid;
+    }
+
+    @Override
+    public List<Move> planLeg(Location startLocation, Location goalLocation) {
+        double goalLng = goalLocation.getLongitude();
+        double goalLat = goalLocation.getLatitude();
+        //Fewest moves made to reach each search state.
+        Map<Long, Integer> bestMovesMade = new HashMap<>();
+        goalField = goalFieldGrid == null ? null
+                : goalFields.computeIfAbsent(List.of(goalLng, goalLat), goal -> goalFieldGrid.towards(goalLocation));
+
+        nodes = 0;
+        heapSize = 0;
+        int start = addNode(startLocation.getLongitude(), startLocation.getLatitude(), -1, -1, 0, goalLng, goalLat);
+        bestMovesMade.put(stateKey(lng[start], lat[start]), 0);
+        push(start);
+
+        int expansions = 0;
+        while (heapSize > 0) {
+            int node = pop();
+            if (movesMade[node] > bestMovesMade.get(stateKey(lng[node], lat[node]))) {
+                continue;
+            }
+            if (estimate[node] == movesMade[node]) {
+                //The lower bound of the moves left is 0 only once the drone is close to the goal.
+                return buildLeg(node);
+            }
+            if (++expansions > maxExpansions) {
+                throw new IllegalStateException("No route found from " + startLocation.getLongitude() + ","
+                        + startLocation.getLatitude() + " within " + maxExpansions + " expansions");
+            }
+
+            for (int d = 0; d < Utils.DIRECTIONS; d++) {
+                double endLng = lng[node] + Utils.MOVE_LNG[d];
+                double endLat = lat[node] + Utils.MOVE_LAT[d];
+                if (!Utils.isConfined(endLng, endLat)) continue;
+                long key = stateKey(endLng, endLat);
+                Integer best = bestMovesMade.get(key);
+                int moves = movesMade[node] + 1;
+                if (best != null && best <= moves) continue;
+                if (noFlyZoneIndex.intersects(lng[node], lat[node], endLng, endLat)) continue;
+                bestMovesMade.put(key, moves);
+                push(addNode(endLng, endLat, node, d, moves, goalLng, goalLat));
+            }
+        }
+        throw new IllegalStateException("No route found from " + startLocation.getLongitude() + ","
+                + startLocation.getLatitude() + " to " + goalLng + "," + goalLat);
+    }
+
+    /**
+     * Returns a lower bound of the number of moves needed to get close to
+     * the goal from the given position. Every move changes the distance to
+     * the goal by at most MOVE_LENGTH, so at least this many moves are needed
+     * to get within DISTANCE_TOLERANCE of it.
+     *
+     * @param distance the distance from the position to the goal
+     * @return lower bound of the moves needed
+     */
+    protected static int movesLowerBound(double distance) {
+        if (distance < Constants.DISTANCE_TOLERANCE) return 0;
+        return (int) Math.floor((distance - Constants.DISTANCE_TOLERANCE) / Constants.MOVE_LENGTH) + 1;
+    }
+
+    private List<Move> buildLeg(int node) {
+        List<Move> leg = new ArrayList<>();
+        Location end = new Location(lng[node], lat[node]);
+        while (parent[node] != -1) {
+            Location start = new Location(lng[parent[node]], lat[parent[node]]);
+            leg.add(new Move(start, end, BuildFlightpath.DUMMY_MOVE_NO, direction[node] * 10));
+            end = start;
+            node = parent[node];
+        }
+        Collections.reverse(leg);
+        return leg;
+    }
+
+    private long stateKey(double longitude, double latitude) {
+        long column = (long) Math.floor((longitude - Constants.LONGITUDE_WEST_BOUNDARY) / resolution);
+        long row = (long) Math.floor((latitude - Constants.LATITUDE_SOUTH_BOUNDARY) / resolution);
+        return (column << 32) | (row & 0xffffffffL);
+    }
+
+    private int addNode(double longitude, double latitude, int parentNode, int d, int moves,
+                        double goalLng, double goalLat) {
+        if (nodes == lng.length) {
+            int capacity = nodes * 2;
+            lng = Arrays.copyOf(lng, capacity);
+            lat = Arrays.copyOf(lat, capacity);
+            parent = Arrays.copyOf(parent, capacity);
+            direction = Arrays.copyOf(direction, capacity);
+            movesMade = Arrays.copyOf(movesMade, capacity);
+            estimate = Arrays.copyOf(estimate, capacity);
+        }
+        lng[nodes] = longitude;
+        lat[nodes] = latitude;
+        parent[nodes] = parentNode;
+        direction[nodes] = d;
+        movesMade[nodes] = moves;
+        if (goalField != null) {
+            estimate[nodes] = moves + goalField.getMovesLowerBound(longitude, latitude);
+        } else {
+            double dLng = longitude - goalLng;
+            double dLat = latitude - goalLat;
+            estimate[nodes] = moves + movesLowerBound(Math.sqrt(dLng * dLng + dLat * dLat));
+        }
+        return nodes++;
+    }
+
+    //Heap of node ids ordered by estimated total moves, preferring nodes closer to the goal on ties.
+    private boolean before(int a, int b) {
+        if (estimate[a] != estimate[b]) return estimate[a] < estimate[b];
+        return movesMade[a] > movesMade[b];
+    }
+
+    private void push(int node) {
+        if (heapSize == heap.length) heap = Arrays.copyOf(heap, heapSize * 2);
+        int i = heapSize++;
+        while (i > 0) {
+            int up = (i - 1) / 2;
+            if (!before(node, heap[up])) break;
+            heap[i] = heap[up];
+            i = up;
+        }
+        heap[i] = node;
+    }
+
+    private int pop() {
+        int top = heap[0];
+        int last = heap[--heapSize];
+        int i = 0;
+        while (true) {
+            int child = 2 * i + 1;
+            if (child >= heapSize) break;
+            if (child + 1 < heapSize && before(heap[child + 1], heap[child])) child++;
+            if (!before(heap[child], last)) break;
+            heap[i] = heap[child];
+            i = child;
+        }
+        heap[i] = last;
+        return top;
+    }
+}
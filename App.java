@@ -1,13 +1,108 @@
 package uk.ac.ed.inf;
 
+import java.io.IOException;
+import java.nio.file.Path;
 import java.sql.SQLException;
 
 
 public class App 
 {
-    public static void main( String[] args ) throws InterruptedException, SQLException {
-        BuildFlightpath.setUp(args);
-        BuildFlightpath.buildMap();
+    public static void main( String[] args ) throws SQLException, IOException {
+        Log.info("Setting up server...");
+        ServerRequest server = new ServerRequest(args);
+        Log.info("Server set up");
+        String compiledMap = IO.getOption("compile-map", null);
+        if (compiledMap != null) {
+            MapArtifact.compile(openDataSource(server), Path.of(compiledMap));
+            return;
+        }
+        Log.info("Setting up database connection...");
+        OrderStore database = new DatabaseConnection(args);
+        Log.info("Database connection set up");
+        Log.info("Checking if deliveries or flightpath tables already exist");
+        //Create 'deliveries' and 'flightpath' tables
+        database.createTables();
+        Log.info("Database tables created");
+
+        MapData map = openMapData(openDataSource(server));
+        Log.info("Shops, no-fly zones and landmarks have been been obtained");
+
+        int droneCount = Integer.parseInt(IO.getOption("drones", "1"));
+        if (droneCount > 1) {
+            Fleet fleet = new Fleet(map, IO.date, droneCount);
+            fleet.setUp(database);
+            fleet.buildMap();
+            fleet.updateTables(database);
+        } else {
+            BuildFlightpath flightpath = new BuildFlightpath(map, IO.date);
+            flightpath.setUp(database);
+            flightpath.buildMap();
+            flightpath.updateTables(database);
+        }
+
+        finish(map, database);
+    }
+
+    /**
+     * Returns where the map data and the What3Words details are obtained
+     * from: the local directory given with the optional data-dir argument,
+     * or else the web server. Also loads the What3Words snapshot if one
+     * was requested.
+     *
+     * @param server the web server
+     * @return source of the map data
+     */
+    protected static MapDataSource openDataSource(ServerRequest server) {
+        String dataDir = IO.getOption("data-dir", null);
+        MapDataSource source = dataDir == null ? server : new SnapshotDataSource(Path.of(dataDir));
+        WordsAddressCache.setDataSource(source);
+        String wordsSnapshot = IO.getOption("words-snapshot", null);
+        if (wordsSnapshot != null) {
+            WordsAddressCache.loadSnapshot(Path.of(wordsSnapshot));
+        }
+        return source;
+    }
+
+    /**
+     * Returns the map data read from the compiled map given with the
+     * optional map-artifact argument, or else obtained from the given
+     * source. If the compiled map can not be read or no longer matches
+     * the data of the source, the data is obtained from the source.
+     *
+     * @param source where the map data is obtained from
+     * @return the map data
+     */
+    protected static MapData openMapData(MapDataSource source) {
+        String compiledMap = IO.getOption("map-artifact", null);
+        if (compiledMap != null) {
+            try {
+                return MapArtifact.load(Path.of(compiledMap), source,
+                        Boolean.parseBoolean(IO.getOption("map-artifact-check", "true")));
+            } catch (IOException e) {
+                Log.error("Compiled map " + compiledMap + " could not be read", e);
+            }
+        }
+        return new MapData(source);
     }
-}
 
+    /**
+     * Closes the database connections, saves the What3Words snapshot
+     * if one was requested and prints the statistics of the caches
+     * and the number of requests sent to the web server.
+     *
+     * @param map        the map data used for the run
+     * @param orderStore the store the orders were read from
+     */
+    protected static void finish(MapData map, OrderStore orderStore) {
+        orderStore.close();
+        String wordsSnapshot = IO.getOption("words-snapshot", null);
+        if (wordsSnapshot != null) {
+            WordsAddressCache.saveSnapshot(Path.of(wordsSnapshot));
+        }
+        Log.info(WordsAddressCache.getStatistics());
+        Log.info(map.getMenuCatalogue().getStatistics());
+        Log.info(map.getNoFlyZoneIndex().getStatistics());
+        Log.info(map.getLegCache().getStatistics());
+        Log.info("Server requests: " + ServerRequest.getTotalRequestCount());
+    }
+}
@@ -0,0 +1,84 @@
+package uk.ac.ed.inf;
+
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.javatuples.Pair;
+
+/**
+ * Plans the flightpaths of every date in a range in one process. The dates
+ * are planned at the same time on a pool of threads sharing the same map
+ * data, each date writes its own geojson file, and the deliveries and moves
+ * of all the dates are written to the database together at the end.
+ *
+ * Takes as command line arguments the first and last date (dd-mm-yyyy), the
+ * web server port and the database port, followed by the same optional
+ * key=value arguments as App. The number of threads is set with threads=N
+ * and defaults to the number of available processors. With drones=N each
+ * date is planned for a fleet of N drones.
+ */
+public class BatchRunner {
+
+    public static void main(String[] args) throws SQLException, InterruptedException, ExecutionException {
+        if (args.length < 4) {
+            throw new ArrayIndexOutOfBoundsException("\n\tNeed the first date, the last date, the server port " +
+                    "and the database port. Given: " + args.length + " arguments in total");
+        }
+        DateTimeFormatter format = DateTimeFormatter.ofPattern("dd-MM-yyyy");
+        LocalDate firstDate = LocalDate.parse(args[0], format);
+        LocalDate lastDate = LocalDate.parse(args[1], format);
+
+        //The arguments App would be given for the first date.
+        List<String> appArgs = new ArrayList<>(List.of(args[0].split("-")));
+        for (int i = 2; i < args.length; i++) {
+            appArgs.add(args[i]);
+        }
+        ServerRequest server = new ServerRequest(appArgs.toArray(new String[0]));
+        OrderStore database = new DatabaseConnection(appArgs.toArray(new String[0]));
+        database.createTables();
+        MapData map = App.openMapData(App.openDataSource(server));
+
+        int threads = Integer.parseInt(IO.getOption("threads",
+                String.valueOf(Runtime.getRuntime().availableProcessors())));
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        int droneCount = Integer.parseInt(IO.getOption("drones", "1"));
+        List<Future<Pair<List<Order>, List<FlightLog>>>> runs = new ArrayList<>();
+        long start = System.nanoTime();
+        for (LocalDate day = firstDate; !day.isAfter(lastDate); day = day.plusDays(1)) {
+            Date date = new Date(String.format("%02d", day.getDayOfMonth()),
+                    String.format("%02d", day.getMonthValue()), String.valueOf(day.getYear()));
+            runs.add(executor.submit(() -> {
+                if (droneCount > 1) {
+                    Fleet fleet = new Fleet(map, date, droneCount);
+                    fleet.setUp(database);
+                    fleet.buildMap();
+                    return Pair.with(fleet.getCompletedOrders(), fleet.getFlightLogs());
+                }
+                BuildFlightpath flightpath = new BuildFlightpath(map, date);
+                flightpath.setUp(database);
+                flightpath.buildMap();
+                return Pair.with(flightpath.getCompletedOrders(), List.of(flightpath.getChosenMoves()));
+            }));
+        }
+        executor.shutdown();
+
+        List<Order> deliveries = new ArrayList<>();
+        List<FlightLog> flightLogs = new ArrayList<>();
+        for (Future<Pair<List<Order>, List<FlightLog>>> run : runs) {
+            Pair<List<Order>, List<FlightLog>> results = run.get();
+            deliveries.addAll(results.getValue0());
+            flightLogs.addAll(results.getValue1());
+        }
+        Log.info("Planned " + runs.size() + " dates on " + threads + " threads in "
+                + String.format("%.1f", (System.nanoTime() - start) / 1e6) + " ms");
+        database.insertResults(deliveries, flightLogs);
+
+        App.finish(map, database);
+    }
+}
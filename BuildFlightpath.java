@@ -1,215 +1,294 @@
 package uk.ac.ed.inf;
 
-import java.sql.Connection;
+import java.io.IOException;
+import java.io.Writer;
 import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Queue;
 
-import com.mapbox.geojson.*;
-import org.javatuples.Pair;
-
 /**
  * Includes the main functionality for the drone control algorithm and controls the movements of the drone
  */
 public class BuildFlightpath {
 
-    //List of te no-fly zones
-    protected static List<NoFlyZone> noFlyZones;
-    //List of the Landmarks
-    protected static List<Landmark> landmarks;
-    //List of all the shops.
-    protected static List<Shop> shops;
+    //dummy move number to pass to getOptimalMove method.
+    protected static final int DUMMY_MOVE_NO = 5;
+
+    //Data shared by every flightpath: no-fly zones, landmarks and shops.
+    private final MapData map;
+    //Date the orders are executed on.
+    private final Date date;
+    //Number of the drone flying the flightpath, from 1.
+    private final int droneId;
     //List of all the orders in the date we are considering.
-    protected static List<Order> orders;
+    protected List<Order> orders;
 
     //Moves the drone is considering.
-    protected static List<Move> moves = new ArrayList<>();
+    protected final FlightLog moves = new FlightLog(Constants.START_LOCATION);
     //Moves the drone is considering to get to the starting
     // position from the last order's delivery point.
-    protected static List<Move> movesToStart = new ArrayList<>();
-    //GeoJson points the drone is considering.
-    protected static List<Point> points = new ArrayList<>();
-    //GeoJson points the drone is considering from last
-    // order's delivery location to starting position.
-    protected static List<Point> pointsToStart = new ArrayList<>();
+    protected final FlightLog movesToStart = new FlightLog(Constants.START_LOCATION);
 
     //The starting location of the drone when it considers a
     // different goal location, ie. the starting location
     // when moving between places.
-    protected static Location startingPlace;
+    protected Location startingPlace;
 
-    //The landmark to be used as as intermediate step for
-    // the drone in order to go around the no-fly zones
-    protected static Landmark landmarkToBeUsed;;
+    //Plans the route between two key-locations.
+    protected final RoutePlanner planner;
+    //Chooses the order the shops of an order are visited in by their
+    // planned moves, or null to visit the closest shop first.
+    private final GoalSequencer goalSequencer;
+    //Lower bound of the moves back to the starting position from anywhere,
+    // or null to plan the route back for every order inspected.
+    private final HomeCostField homeCostField;
 
     //list of orders already completed by the drone.
-    private static final ArrayList<Order> completedOrders = new ArrayList<>();
-    //GeoJson points the drone is committed to.
-    private static final List<Point> pointsCommitted = new ArrayList<>();
+    private final ArrayList<Order> completedOrders = new ArrayList<>();
     //Moves the drone has committed to.
-    private static final List<Move> chosenMoves = new ArrayList<>();
+    private final FlightLog chosenMoves = new FlightLog(Constants.START_LOCATION, Constants.MAX_MOVES);
+    //Number of moves committed to before each completed order.
+    private final List<Integer> movesBeforeOrder = new ArrayList<>();
 
-    private static ServerRequest server;
-    private static DatabaseConnection database;
+    protected int totalNumberOfOrders;
+    protected double monetaryValueOfAllOrders;
 
-    protected static int totalNumberOfOrders;
-    protected static double monetaryValueOfAllOrders;
-
-    //dummy move number to pass to getOptimalMove method.
-    protected static int dummyMoveNo = 5;
     //Number (No.) of moves made while moving from one key-location to another.
-    protected static int betweenPlacesMoveNo;
+    protected int betweenPlacesMoveNo;
     //Number of moves the drone is actually making / committing to.
-    private static int moveNo;
+    private int moveNo;
     //Number of moves needed to get to the starting position from
     // the last order's delivery point.
-    private static int moveNoNeededToStart;
+    private int moveNoNeededToStart;
     //Number of moves needed to complete a given order.
-    private static int moveNoNeeded;
+    private int moveNoNeeded;
+    //True if the inspection of the current order was stopped because
+    // the order provably does not fit in the moves left.
+    private boolean inspectionAborted;
+    //Lower bound of the moves the current order needed when its
+    // inspection was stopped.
+    private int movesLowerBoundWhenAborted;
+    //Number of orders whose inspection was stopped early.
+    private int abortedInspections;
+    //Number of orders given up because the route back to the starting
+    // position turned out to need more moves than its lower bound.
+    private int ordersGivenUp;
+    //True if orders that do not fit are skipped instead of sending the
+    // drone back, which is the case when the sequence is optimised.
+    private boolean skipOrdersThatDoNotFit;
 
     //Current (actual) location of the drone.
-    private static Location currentLocation;
-    //Hypothetical location of the drone when considering different optimal moves.
-    protected static Location pretendCurrentLocation;
+    private Location currentLocation;
 
     //Queue of orders in order of execution. Ordered using cost to distance ratio
-    private static Queue<Order> ordersInLine;
+    private Queue<Order> ordersInLine;
     //Order we are currently executing.
-    private static Order currentOrder;
+    private Order currentOrder;
     //Shops drone needs to visit in current order.
-    private static List<Shop> shopsInOrder;
-
-    //The shops the drone needs to visit in order of closest proximity from current location
-    //private static List<Shop> orderedShops;
+    private List<Shop> shopsInOrder;
 
     //Key-locations that the drone must visit for current order lined first to last.
-    protected static List<Location> goalLocationsForOrder;
+    protected List<Location> goalLocationsForOrder;
+
+    //Number of requests sent to the web server while setting up
+    // and while planning the flightpath.
+    private long setUpServerRequests;
+    private long planningServerRequests;
 
-    protected static List<Landmark> visitedLandmarks = new ArrayList<>();
 
+    /**
+     * Class constructor for the flightpath of the drone on the given date.
+     * Each flightpath keeps its own state, so flightpaths for different
+     * dates can be planned at the same time sharing the same map data.
+     *
+     * @param map  the no-fly zones, landmarks and shops
+     * @param date the date the orders are executed on
+     */
+    protected BuildFlightpath(MapData map, Date date) {
+        this(map, date, 1);
+    }
+
+    /**
+     * Class constructor for the flightpath of one of the drones of a
+     * fleet on the given date.
+     *
+     * @param map     the no-fly zones, landmarks and shops
+     * @param date    the date the orders are executed on
+     * @param droneId number of the drone, from 1
+     */
+    protected BuildFlightpath(MapData map, Date date, int droneId) {
+        this.map = map;
+        this.date = date;
+        this.droneId = droneId;
+        this.planner = map.createPlanner();
+        this.goalSequencer = "distance".equals(IO.getOption("shop-order", "moves")) ? null
+                : new GoalSequencer(planner, Constants.SHOP_ORDER_MAX_EXPANSIONS);
+        this.homeCostField = Boolean.parseBoolean(IO.getOption("home-field", "false")) ? map.getHomeCostField() : null;
+        this.chosenMoves.setDroneId(droneId);
+    }
 
     /**
-     * Sets up the server, the database and we save the data
-     * retrieved from them in variables. We set up the order
-     * that is going to be executed first
+     * Gets the orders placed on the date of the flightpath from the database
+     * and sets up the order that is going to be executed first.
      *
-     * @param args command line arguments
+     * @param orderStore where the orders are obtained from
      *
-     * @throws InterruptedException
      * @throws SQLException
      */
-    protected static void setUp(String[] args) throws InterruptedException, SQLException {
-		System.out.println("Setting up server...");
-        server = new ServerRequest(args);
-        System.out.println("Server set up");
-        System.out.println("Setting up database connection...");
-        database = new DatabaseConnection(args);
-        System.out.println("Database connection set up");
-        System.out.println("Checking if deliveries or flightpath tables already exist");
-        //Create 'deliveries' and 'flightpath' tables
-        DatabaseConnection.createTables();
-        System.out.println("Database tables created");
-
-        noFlyZones = server.getNoFlyZones();
-        landmarks = server.getLandmarks();
-        shops = server.getShops();
-        System.out.println("Shops, no-fly zones and landmarks have been been obtained from server");
+    protected void setUp(OrderStore orderStore) throws SQLException {
+        long serverRequestsBefore = ServerRequest.getRequestCount();
+        setUp(orderStore.getHydratedOrders(date, map.getMenuCatalogue()));
+        setUpServerRequests = ServerRequest.getRequestCount() - serverRequestsBefore;
+    }
 
+    /**
+     * Sets up the order that is going to be executed first out of the
+     * given orders, which must already know their shops and cost. The
+     * What3Words addresses of the orders and shops are all resolved at
+     * once before the orders are put in line.
+     *
+     * @param hydratedOrders the orders placed on the date of the flightpath
+     */
+    protected void setUp(List<Order> hydratedOrders) {
+        prefetchAddresses(map, hydratedOrders);
+        queueOrders(hydratedOrders);
+    }
+
+    /**
+     * Resolves the What3Words addresses of the given orders and of all
+     * the shops at once.
+     *
+     * @param map    the map data holding the shops
+     * @param orders the orders whose delivery addresses are resolved
+     */
+    protected static void prefetchAddresses(MapData map, List<Order> orders) {
+        List<String> addresses = new ArrayList<>();
+        for (Order order : orders) {
+            addresses.add(order.get3WordsAddress());
+        }
+        for (Shop shop : map.getShops()) {
+            addresses.add(shop.location);
+        }
+        int concurrency = Integer.parseInt(IO.getOption("prefetch-concurrency",
+                String.valueOf(Constants.WORDS_PREFETCH_CONCURRENCY)));
+        Log.info(WordsAddressCache.prefetch(addresses, concurrency));
+    }
+
+    /**
+     * Puts the given orders in line and sets up the order that is going
+     * to be executed first. The addresses of the orders and shops should
+     * already have been resolved.
+     *
+     * @param hydratedOrders the orders the drone is given
+     */
+    protected void queueOrders(List<Order> hydratedOrders) {
         currentLocation = Constants.START_LOCATION;
-        pointsCommitted.add(currentLocation.getPoint());
+        orders = hydratedOrders;
 
-        orders = database.getOrders(IO.date);
         totalNumberOfOrders = orders.size();
         monetaryValueOfAllOrders = getMonetaryValue(orders);
-        for (Order order  : orders) {
-            shopsInOrder = Utils.getShopsInOrder(shops, DatabaseConnection.getItemsInOrder(order));
-            order.setCost(Utils.getDeliveryCost(shopsInOrder, DatabaseConnection.getItemsInOrder(order)));
+        Log.debug("Orders for the date requested have been obtained from the database");
+        Log.debug("Total cost for each order has been calculated");
+
+        ordersInLine = Utils.getOrdersInLine(map.getMenuCatalogue(), orders, currentLocation);
+        if (Boolean.parseBoolean(IO.getOption("optimise", "false")) && !ordersInLine.isEmpty()) {
+            long timeBudgetMs = Long.parseLong(IO.getOption("optimise-ms",
+                    String.valueOf(Constants.OPTIMISE_TIME_BUDGET_MS)));
+            int starts = Integer.parseInt(IO.getOption("optimise-starts",
+                    String.valueOf(Runtime.getRuntime().availableProcessors())));
+            ordersInLine = new OrderSequenceOptimiser(orders, currentLocation, planner, Constants.MAX_MOVES,
+                    goalSequencer != null)
+                    .optimise(ordersInLine, timeBudgetMs, starts, Constants.OPTIMISE_SEED);
+            skipOrdersThatDoNotFit = true;
         }
-        System.out.println("Orders for the date requested have been obtained from the database");
-        System.out.println("Total cost for each order has been calculated");
-
-        ordersInLine = Utils.getOrdersInLine(shops, orders, currentLocation);
-        System.out.println("Number of orders in queue initially: " + ordersInLine.size());
-        System.out.println("Orders have been queued in order of maximum cost / distance from drone's current location");
+        Log.info("Number of orders in queue initially: " + ordersInLine.size());
+        Log.debug("Orders have been queued in order of maximum cost / distance from drone's current location");
         currentOrder = ordersInLine.poll();
-        prepareOrder(currentOrder, currentLocation);
-
-
-        landmarkToBeUsed = Utils.getClosestLandmark(currentLocation);
+        if (currentOrder != null) {
+            prepareOrder(currentOrder, currentLocation);
+        }
     }
 
-    protected static void prepareOrder(Order order, Location currLocation) throws SQLException, InterruptedException {
+    protected void prepareOrder(Order order, Location currLocation) {
         assert order != null;
-        shopsInOrder = Utils.getShopsInOrder(shops, DatabaseConnection.getItemsInOrder(order));
+        shopsInOrder = order.getShopsInOrder();
         //orderedShops = Utils.getOrderedShops(shopsInOrder, currentLocation);
-        order.setShopsInOrder(shopsInOrder);
-        goalLocationsForOrder = Utils.getGoalLocationsForOrder(order, shopsInOrder, currLocation);
+        goalLocationsForOrder = goalSequencer == null
+                ? Utils.getGoalLocationsForOrder(order, shopsInOrder, currLocation)
+                : goalSequencer.getGoalLocationsForOrder(order, shopsInOrder, currLocation, false);
         currentOrder.setGoalLocations(goalLocationsForOrder);
-        currentOrder.setItemsToBeDelivered(DatabaseConnection.getItemsInOrder(order));
     }
 
-    protected static void printOrdersInLine(Queue<Order> orders, Location currentLocation) throws SQLException, InterruptedException {
+    protected void printOrdersInLine(Queue<Order> orders, Location currentLocation) {
         while (!orders.isEmpty()) {
             Order order = orders.poll();
-            shopsInOrder = Utils.getShopsInOrder(shops, DatabaseConnection.getItemsInOrder(order));
+            shopsInOrder = order.getShopsInOrder();
             //orderedShops = Utils.getOrderedShops(shopsInOrder, currentLocation);
             List<String> shopsList = new ArrayList<>();
             for (Shop shop : shopsInOrder) {
                 shopsList.add(shop.toString());
             }
             currentLocation = order.getDeliveryLocation();
-            System.out.println("OrderNo: " + order.getOrderNo());
-            System.out.println("Shops: " + shopsList);
-            System.out.println("Delivery Location: " + order.get3WordsAddress());
-            System.out.println();
+            Log.debug("OrderNo: " + order.getOrderNo() + ", Shops: " + shopsList
+                    + ", Delivery Location: " + order.get3WordsAddress());
         }
     }
 
     /**
-     * Adds a hovering move to the list of non-final moves and the
-     * point of the ending location of that move to the list of non-final
-     * points of the drone's flightpath. Increases by 1 the betweenPlacesMoveNo
-     * counter and the moveNoNeeded counter
+     * Adds a hovering move to the list of non-final moves of the
+     * given procedure and the point of the ending location of that
+     * move to the matching list of non-final points of the drone's
+     * flightpath.
      *
      * @param currLocation the drone's location
+     * @param procedureCode 0 when executing an order, 1 when returning
+     *                      to the starting position
      */
-    protected static void makeHoverMove(Location currLocation) {
-        Move hoverMove = new Move(currLocation, currLocation, dummyMoveNo, Constants.HOVER_ANGLE);
-        hoverMove.setAssociatedOrder(currentOrder);
-        moves.add(hoverMove);
-        points.add(hoverMove.getEndLocation().getPoint());
-        betweenPlacesMoveNo++;
-        moveNoNeeded++;
+    protected void makeHoverMove(Location currLocation, int procedureCode) {
+        Move hoverMove = new Move(currLocation, currLocation, DUMMY_MOVE_NO, Constants.HOVER_ANGLE);
+        addMove(hoverMove, procedureCode);
     }
 
     /**
-     * Returns the most optimal move for the drone to take so
-     * that it gets closer to the next goal location taking into
-     * consideration the confined area.
+     * Adds a move to the log of non-final moves of the given procedure
+     * and increases the matching move counters. Only the end location
+     * and angle of the move are kept.
      *
-     * @return most optimal move
+     * @param move the move to add
+     * @param procedureCode 0 when executing an order, 1 when returning
+     *                      to the starting position
      */
-    protected static Move makeGreedyMove(Location goalLocation, int moveNumber) {
-        List<Pair<Integer, Location>> possibleMoves = Utils.getPossibleMoves(pretendCurrentLocation);
-        Move optimalMove = Utils.getOptimalMove(pretendCurrentLocation, goalLocation, moveNumber, possibleMoves);
-        return optimalMove;
+    private void addMove(Move move, int procedureCode) {
+        if (procedureCode == 0) {
+            moves.add(move, currentOrder);
+            moveNoNeeded++;
+        } else {
+            movesToStart.add(move, currentOrder);
+            moveNoNeededToStart++;
+        }
+        betweenPlacesMoveNo++;
     }
 
-    protected static void commitRoute(int procedureCode) {
+    /**
+     * Commits to the moves of the given procedure. The number of moves
+     * committed to before an order is kept so that the order can be
+     * given up again if the drone can not get back from it.
+     *
+     * @param procedureCode 0 when executing an order, 1 when returning
+     *                      to the starting position
+     */
+    protected void commitRoute(int procedureCode) {
         if(procedureCode==0) {
-            pointsCommitted.addAll(points);
+            movesBeforeOrder.add(moveNo);
             chosenMoves.addAll(moves);
             moveNo = moveNo + moveNoNeeded;
             //System.out.println("Move number is updated.");
             completedOrders.add(currentOrder);
-            currentLocation = chosenMoves.get(chosenMoves.size() - 1).getEndLocation();
-            pointsToStart.clear();
-            movesToStart.clear();
-            points.clear();
-            moves.clear();
+            currentOrder.setDroneId(droneId);
+            currentLocation = chosenMoves.getEndLocation();
+            moves.clear(currentLocation);
         } else if (procedureCode==1) {
-            pointsCommitted.addAll(pointsToStart);
             chosenMoves.addAll(movesToStart);
             moveNo = moveNo + moveNoNeededToStart;
             currentLocation = Constants.START_LOCATION;
@@ -225,113 +304,99 @@ public class BuildFlightpath {
      * and points are finalised and added to the lists of the drone's
      * committed points and moves.
      * If the order is executed and the ordersInLine queue is still not
-     * empty we get the next order and call inspectOrder.
+     * empty we get the next order ready to be inspected. If it is not,
+     * the drone goes back to the starting position from the last
+     * delivery point it has committed to, unless the sequence of the
+     * orders has been optimised, in which case the order is skipped and
+     * the next one in line is inspected.
+     * When the moves back to the starting position are only bounded
+     * while inspecting, see returnToStart for what happens if the
+     * route back needs more of them.
      *
-     * @throws SQLException
-     * @throws InterruptedException
+     * @return true if there is a next order to inspect, false if the
+     *         drone has gone back to the starting position
      */
-    protected static void makeNextProcedure() throws SQLException, InterruptedException {
-        System.out.println("We are in the makeNextProcedure method.");
-        if (moveNo + moveNoNeeded + moveNoNeededToStart <= Constants.MAX_MOVES) {
+    protected boolean makeNextProcedure() {
+        if (!inspectionAborted && moveNo + moveNoNeeded + moveNoNeededToStart <= Constants.MAX_MOVES) {
             //We have enough moves left to commit to making the next order
+            Log.info("Order " + currentOrder.getOrderNo() + " committed: " + moveNoNeeded + " moves, "
+                    + (Constants.MAX_MOVES - moveNo - moveNoNeeded) + " moves left");
             commitRoute(0);
             if (!ordersInLine.isEmpty()) {
                 currentOrder = ordersInLine.poll();
                 prepareOrder(currentOrder, currentLocation);
-                inspectOrder();
+                return true;
             } else {
-                System.out.println("We have completed all orders for the day so we are moving to the start location.");
-                commitRoute(1);
-                System.out.println("Percentage monetary value = 1.0");
+                Log.info("We have completed all orders for the day so we are moving to the start location.");
+                returnToStart();
+                Log.info("Percentage monetary value = " + getMonetaryValue(completedOrders) / monetaryValueOfAllOrders);
             }
+        } else if (skipOrdersThatDoNotFit && !ordersInLine.isEmpty()) {
+            Log.info("There are not enough moves left to carry out order " + currentOrder.getOrderNo()
+                    + " so it is skipped.");
+            currentOrder = ordersInLine.poll();
+            prepareOrder(currentOrder, currentLocation);
+            return true;
         } else {
-            System.out.println("There are not enough moves left to carry out the next order in line " +
-                    "so we are moving to the start location.");
-            commitRoute(1);
-            System.out.println("Percentage Monetary value = " + getMonetaryValue(completedOrders) / monetaryValueOfAllOrders);
+            int movesNeeded = inspectionAborted ? movesLowerBoundWhenAborted : moveNoNeeded + moveNoNeededToStart;
+            Log.info("There are not enough moves left to carry out order " + currentOrder.getOrderNo()
+                    + " (" + (inspectionAborted ? "at least " : "") + movesNeeded + " moves including the return, "
+                    + (Constants.MAX_MOVES - moveNo) + " left) so we are moving to the start location.");
+            returnToStart();
+            Log.info("Percentage Monetary value = " + getMonetaryValue(completedOrders) / monetaryValueOfAllOrders);
+        }
+        return false;
+    }
+
+    /**
+     * Plans the route back to the starting position from the last
+     * delivery point the drone has committed to and commits to it.
+     * The orders are committed to on a lower bound of the moves back when
+     * the home cost field is used, so if the route back needs more moves
+     * than the drone has left, the last order is given up and the route
+     * back is planned from the delivery point before it, until it fits.
+     * From the starting position itself it always fits.
+     */
+    protected void returnToStart() {
+        while (true) {
+            startingPlace = currentLocation;
+            gettingToStartPosition();
+            if (moveNo + moveNoNeededToStart <= Constants.MAX_MOVES || completedOrders.isEmpty()) break;
+            Order givenUp = completedOrders.remove(completedOrders.size() - 1);
+            Log.info("Order " + givenUp.getOrderNo() + " is given up: the route back needs " + moveNoNeededToStart
+                    + " moves, " + (Constants.MAX_MOVES - moveNo) + " left");
+            givenUp.setDroneId(0);
+            moveNo = movesBeforeOrder.remove(movesBeforeOrder.size() - 1);
+            chosenMoves.truncate(moveNo);
+            currentLocation = chosenMoves.getEndLocation();
+            ordersGivenUp++;
         }
+        commitRoute(1);
     }
 
 
     /**
      * Method to get a list of hypothetical moves that the drone could perform.
      * This method is necessary to see if the drone is able to execute an order
-     * before its battery runs out, and to see if the recommended route for the
-     * drone when moving between 2 key-locations of an order runs into a no fly
-     * zone in which case this method can find an alternative route using the
-     * landmarks and zeroing the betweenPlacesMoveNo counter.
+     * before its battery runs out. The route between the 2 key-locations is
+     * planned by the selected route planner and is followed by a hovering move
+     * once the drone is close to the goal location.
      *
      * @param startLocation the first key-location,such as a delivery point or a shop
      * @param goalLocation the goal location the drone needs to get to
      * @param procedureCode a code that shows what kind of procedure the drone is about
-     *                      to execute. This can only take values of 0, 1, or 2
+     *                      to execute. This can only take values of 0 when executing
+     *                      an order, or 1 when returning to the starting position
      */
-    protected static void moveBetweenPlaces(Location startLocation, Location goalLocation, int procedureCode) {
+    protected void moveBetweenPlaces(Location startLocation, Location goalLocation, int procedureCode) {
+        List<Move> leg = planner.planLeg(startLocation, goalLocation);
         betweenPlacesMoveNo = 0;
-        pretendCurrentLocation = startLocation;
-
-        while (true) {
-            System.out.println(pretendCurrentLocation);
-            Move optimalMove = makeGreedyMove(goalLocation, dummyMoveNo);
-            System.out.println("Checking if optimal move intersects no-fly zones.");
-            if (Utils.doesIntersectWithNoFlyZones(optimalMove.getStartLocation(), optimalMove.getEndLocation())) {
-                System.out.println("Optimal move does intersect perimeter of no-fly zone.");
-                System.out.println("The moves used from previous checkpoint to the intersection is: " + betweenPlacesMoveNo);
-                int movesRemoved = 0;
-                while (movesRemoved < betweenPlacesMoveNo) {
-                    moves.remove(moves.size() - 1);
-                    movesRemoved++;
-                }
-                System.out.println("Moves from checkpoint to intersection have been removed.");
-                int pointsRemoved = 0;
-                while (pointsRemoved < betweenPlacesMoveNo) {
-                    points.remove(points.size() - 1);
-                    pointsRemoved++;
-                }
-                if (procedureCode==3) {
-                    landmarks.remove(landmarkToBeUsed);
-                }
-                if (!landmarks.isEmpty()) {
-                    landmarkToBeUsed = Utils.getClosestLandmark(goalLocation);
-                    moveBetweenPlaces(startingPlace, landmarkToBeUsed.getLocation(), 3);
-                    moveBetweenPlaces(startingPlace, goalLocation, 3);
-                } else {
-                    System.err.println("Landmarks are not useful for this task!");
-                    System.exit(1);
-                }
-
-                moveNoNeeded = moveNoNeeded - betweenPlacesMoveNo;
-                break;
-            } else {
-                pretendCurrentLocation = optimalMove.getEndLocation();
-                optimalMove.setAssociatedOrder(currentOrder);
-                if (procedureCode == 0 || procedureCode == 3) {
-                    moves.add(optimalMove);
-                    points.add(optimalMove.getEndLocation().getPoint());
-                    moveNoNeeded++;
-                    if (landmarks.size() != 2) {
-                        landmarks = server.getLandmarks();
-                    }
-                } else {
-                    movesToStart.add(optimalMove);
-                    pointsToStart.add(optimalMove.getEndLocation().getPoint());
-                    moveNoNeededToStart++;
-                }
-                betweenPlacesMoveNo++;
-                double distanceToGoal = Utils.getDistance(pretendCurrentLocation, goalLocation);
-                System.out.println(distanceToGoal);
-                if (Utils.isClose(pretendCurrentLocation, goalLocation)) {
-                    System.out.println("Pretend-current-location is close enough so we break out of " +
-                            "the while loop to the next goal location in the for loop");
-                    //if (!goalLocation.equals(landmarkToBeUsed.getLocation()) && procedureCode!=1) {
-                    if (!goalLocation.equals(landmarkToBeUsed.getLocation())) {
-                        makeHoverMove(pretendCurrentLocation);
-                    }
-                    startingPlace = pretendCurrentLocation;
-                    break;
-                }
-            }
+        for (Move move : leg) {
+            addMove(move, procedureCode);
         }
+        Location reached = leg.isEmpty() ? startLocation : leg.get(leg.size() - 1).getEndLocation();
+        makeHoverMove(reached, procedureCode);
+        startingPlace = reached;
     }
 
     /**
@@ -340,78 +405,153 @@ public class BuildFlightpath {
      * moveBetweenPlaces method with the procedure code 0, thus
      * increasing the moveNoNeeded counter while moving between
      * places. When we got the optimum route that executes the
-     * order we then call gettingToStartPosition method.
+     * order we then call gettingToStartPosition method, unless the home
+     * cost field is used, in which case the moves back are only bounded
+     * with a lookup in the field and the route back is planned once the
+     * drone actually returns.
      *
-     * @throws InterruptedException
-     * @throws SQLException
+     * Before each leg is planned, the moves made so far are added to a
+     * lower bound of the moves left to finish the order and get back to
+     * the starting position. If that is already more than the moves the
+     * drone has left, the order cannot fit and the inspection stops
+     * without planning the rest of it. The shops of the order are put in
+     * line by the lower bound of their moves when the order is prepared,
+     * and only once the order passes the first check are they put in line
+     * again by planned moves, so no leg is planned for an order that
+     * cannot fit.
      */
-    protected static void inspectOrder() throws InterruptedException, SQLException {
+    protected void inspectOrder() {
         moveNoNeeded = 0;
+        moveNoNeededToStart = 0;
+        inspectionAborted = false;
         if (currentOrder !=null) {
-            System.out.println("next order in not null");
-            pretendCurrentLocation = currentLocation;
             startingPlace = currentLocation;
-            System.out.println("Pretend-current-location set to our current location");
+            moves.clear(currentLocation);
             List<Location> orderStops = currentOrder.getGoalLocations();
+            List<Shop> shops = currentOrder.getShopsInOrder();
+            if (goalSequencer != null && shops.size() > 1
+                    && moveNo + getMovesLowerBound(startingPlace, orderStops, 0) <= Constants.MAX_MOVES) {
+                orderStops = goalSequencer.getGoalLocationsForOrder(currentOrder, shops, currentLocation, true);
+                goalLocationsForOrder = orderStops;
+                currentOrder.setGoalLocations(orderStops);
+            }
 
             //System.out.println("Goal locations: " + orderStops);
-            for (Location goalLocation : orderStops) {
-                System.out.println("Location: " + goalLocation);
+            for (int i = 0; i <= orderStops.size(); i++) {
+                int lowerBound = moveNoNeeded + getMovesLowerBound(startingPlace, orderStops, i);
+                if (moveNo + lowerBound > Constants.MAX_MOVES) {
+                    inspectionAborted = true;
+                    movesLowerBoundWhenAborted = lowerBound;
+                    abortedInspections++;
+                    Log.debug(() -> "Inspection of order " + currentOrder.getOrderNo() + " stopped: at least "
+                            + lowerBound + " moves needed, " + (Constants.MAX_MOVES - moveNo) + " left");
+                    return;
+                }
+                if (i == orderStops.size()) break;
+                Location goalLocation = orderStops.get(i);
+                Log.trace(() -> "Location: " + goalLocation);
                 moveBetweenPlaces(startingPlace, goalLocation,0);
             }
-            System.out.println("End of inspecting order. Now moving to pretend-getting to start position.");
-            gettingToStartPosition();
+            if (homeCostField == null) {
+                Log.trace("End of inspecting order. Now moving to pretend-getting to start position.");
+                gettingToStartPosition();
+            } else {
+                int knownMoves = planner.getKnownMoveCount(startingPlace, Constants.START_LOCATION);
+                moveNoNeededToStart = 1 + (knownMoves >= 0 ? knownMoves : homeCostField.getMovesLowerBound(startingPlace));
+            }
         }
     }
 
+    /**
+     * Returns a lower bound of the moves needed to visit the remaining
+     * stops of an order and then get back to the starting position,
+     * counting the hovering move at the end of every leg. The first leg
+     * starts from a known location, so its exact number of moves is used
+     * if the planner already knows it. The drone only gets close to each
+     * stop, so the later legs are bounded from the stops' locations less
+     * the distance tolerance. With the home cost field the return is
+     * bounded from the field as well, one move less from a stop than at
+     * the stop itself as the drone can be up to a move away from it.
+     *
+     * @param from      the location of the drone
+     * @param stops     the key-locations of the order
+     * @param nextStop  index of the next stop to visit, the size of the
+     *                  list if only the return is left
+     * @return the lower bound of the moves
+     */
+    private int getMovesLowerBound(Location from, List<Location> stops, int nextStop) {
+        Location goal = nextStop < stops.size() ? stops.get(nextStop) : Constants.START_LOCATION;
+        int knownMoves = planner.getKnownMoveCount(from, goal);
+        int firstLeg = knownMoves >= 0 ? knownMoves : AStarPlanner.movesLowerBound(Utils.getDistance(from, goal));
+        if (knownMoves < 0 && homeCostField != null && nextStop == stops.size()) {
+            firstLeg = Math.max(firstLeg, homeCostField.getMovesLowerBound(from));
+        }
+        int bound = 1 + firstLeg;
+        for (int i = nextStop; i < stops.size(); i++) {
+            Location legGoal = i + 1 < stops.size() ? stops.get(i + 1) : Constants.START_LOCATION;
+            double distance = Utils.getDistance(stops.get(i), legGoal) - Constants.DISTANCE_TOLERANCE;
+            int leg = AStarPlanner.movesLowerBound(Math.max(distance, 0));
+            if (homeCostField != null && i + 1 == stops.size()) {
+                leg = Math.max(leg, homeCostField.getMovesLowerBound(stops.get(i)) - 1);
+            }
+            bound += 1 + leg;
+        }
+        return bound;
+    }
+
     /**
      * Sets the moveNoNeededToStart counter to zero and then
      * inspects the route to the starting position from the
      * drone's current position by calling the moveBetweenPlaces
      * method using procedure code 1 so that the counter
      * moveNoNeededToStart is increased.
-     *
-     * @throws SQLException
-     * @throws InterruptedException
      */
-    protected static void gettingToStartPosition() throws SQLException, InterruptedException {
+    protected void gettingToStartPosition() {
         moveNoNeededToStart = 0;
-        pretendCurrentLocation = startingPlace;
+        movesToStart.clear(startingPlace);
         moveBetweenPlaces(startingPlace, Constants.START_LOCATION,1);
+        Log.trace("End of gettingToStartPosition. Now moving to committing to the next procedure.");
+    }
 
-        System.out.println("End of gettingToStartPosition. Now moving to committing to the next procedure.");
-        makeNextProcedure();
+    /**
+     * Inspects the orders in line one after the other, committing to
+     * each one while there are enough moves left, until the drone
+     * goes back to the starting position.
+     */
+    protected void executeOrders() {
+        if (currentOrder == null) return;
+        do {
+            inspectOrder();
+        } while (makeNextProcedure());
     }
 
 
 
     /**
-     * Returns the corresponding GeoJson map taking into account the points
+     * Writes the corresponding GeoJson map taking into account the points
      * through which the drone has gone through so that we can render the
-     * path as a LineString.
+     * path as a LineString. The points are taken straight from the moves
+     * the drone has committed to. With the optional geojson-orders=true
+     * argument the moves made for each order are also written as separate
+     * features.
      *
-     * @return json string of the corresponding map
+     * @param out where the json of the map is written to
+     * @throws IOException if the writer fails
      */
-    protected static String createGeojsonMap() {
-        LineString lineString = LineString.fromLngLats(pointsCommitted);
-        List<Feature> features = new ArrayList<>();
-        Feature line = Feature.fromGeometry((Geometry) lineString);
-        features.add(line);
-
-        FeatureCollection fc = FeatureCollection.fromFeatures(features);
-        String jsonString = fc.toJson();
-        return jsonString;
+    protected void writeGeojsonMap(Writer out) throws IOException {
+        boolean perOrderFeatures = Boolean.parseBoolean(IO.getOption("geojson-orders", "false"));
+        new GeojsonWriter(out).write(chosenMoves, perOrderFeatures);
     }
 
     /**
-     * Updates the database tables using the data stores in
-     * the lists completedOrders and chosenMoves.
+     * Updates the database tables using the data stored in
+     * completedOrders and the log of chosenMoves.
      *
+     * @param orderStore where the results are written to
      * @throws SQLException
      */
-    protected static void updateTables() throws SQLException {
-        DatabaseConnection.insertDeliveries(completedOrders);
-        DatabaseConnection.insertMoves(chosenMoves);
+    protected void updateTables(OrderStore orderStore) throws SQLException {
+        orderStore.insertResults(completedOrders, List.of(chosenMoves));
     }
 
     /**
@@ -432,28 +572,51 @@ public class BuildFlightpath {
     }
 
     /**
-     * Method which completes the map executing the orders,
-     * creating a json string of the points the drone has
-     * travelled to, writing that string to a geojson file,
-     * and updating the 'deliveries' and 'flightpath' tables
-     * in the database.
-     *
-     * @throws InterruptedException
-     * @throws SQLException
+     * Method which completes the map executing the orders
+     * and writes the points the drone has travelled to
+     * to a geojson file.
+     * The database tables are updated separately with
+     * updateTables so that the results of several dates
+     * can be written together.
      */
-    protected static void buildMap() throws InterruptedException, SQLException {
+    protected void buildMap() {
         //printOrdersInLine(ordersInLine, currentLocation);
-        inspectOrder();
-		for (int i = 0; i < chosenMoves.size(); i++) {
-		    chosenMoves.get(i).setMoveNumber(i);
-        }
-        String jsonString = createGeojsonMap();
-        IO.writeReadingFile(jsonString);
-        updateTables();
-        //double percentageMonetaryValue = getMonetaryValue(completedOrders) / monetaryValueOfAllOrders;
-        //System.out.println("Percentage monetary value: " + percentageMonetaryValue);
-        System.out.println("Date: " + currentOrder.getDate().toString());
-
+        long serverRequestsBefore = ServerRequest.getRequestCount();
+        executeOrders();
+        planningServerRequests = ServerRequest.getRequestCount() - serverRequestsBefore;
+        IO.writeReadingFile(date, this::writeGeojsonMap);
+        Log.info("Date: " + date.getYear() + "-" + date.getMonth() + "-" + date.getDay()
+                + ", orders delivered: " + completedOrders.size() + " / " + totalNumberOfOrders
+                + ", moves: " + chosenMoves.size()
+                + ", inspections stopped early: " + abortedInspections
+                + (homeCostField == null ? "" : ", orders given up on the way back: " + ordersGivenUp)
+                + ", server requests: " + setUpServerRequests + " setting up, " + planningServerRequests + " planning");
     }
 
+    /**
+     * @return number of the drone flying the flightpath, from 1.
+     */
+    protected int getDroneId() { return this.droneId; }
+
+    /**
+     * @return number of orders the drone was given.
+     */
+    protected int getTotalNumberOfOrders() { return this.totalNumberOfOrders; }
+
+    /**
+     * @return list of orders completed by the drone.
+     */
+    protected List<Order> getCompletedOrders() { return this.completedOrders; }
+
+    /**
+     * @return log of the moves the drone has committed to.
+     */
+    protected FlightLog getChosenMoves() { return this.chosenMoves; }
+
+    /**
+     * @return number of requests sent to the web server while planning the
+     *         flightpath, which should be 0 as all the map data is preloaded.
+     */
+    protected long getPlanningServerRequests() { return this.planningServerRequests; }
+
 }
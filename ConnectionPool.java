@@ -0,0 +1,202 @@
+package uk.ac.ed.inf;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Small pool of JDBC connections to the database. Each pooled connection
+ * keeps the statements prepared on it so that they can be reused the next
+ * time the same query is run on that connection.
+ */
+public class ConnectionPool {
+
+    private final String jdbcString;
+    private final int maxConnections;
+    //Connections that are open and not currently borrowed.
+    private final BlockingQueue<PooledConnection> idle = new LinkedBlockingQueue<>();
+    private final AtomicInteger openConnections = new AtomicInteger();
+    private final AtomicInteger activeConnections = new AtomicInteger();
+    private volatile boolean closed = false;
+
+    private final LongAdder borrows = new LongAdder();
+    private final LongAdder borrowWaitNanos = new LongAdder();
+    private final LongAdder statementHits = new LongAdder();
+    private final LongAdder statementMisses = new LongAdder();
+
+    /**
+     * Class constructor specifying the database to connect to.
+     * No connection is opened until one is borrowed.
+     *
+     * @param jdbcString     the JDBC url of the database
+     * @param maxConnections the maximum number of connections the pool
+     *                       keeps open at the same time
+     */
+    protected ConnectionPool(String jdbcString, int maxConnections) {
+        this.jdbcString = jdbcString;
+        this.maxConnections = maxConnections;
+    }
+
+    /**
+     * Borrows a connection from the pool, opening a new one if none is idle
+     * and the pool is not full, or else waiting for one to be returned.
+     * The connection goes back to the pool when it is closed.
+     *
+     * @return a connection to the database
+     * @throws SQLException if a connection could not be opened, or none was
+     *                      returned to the pool in time
+     */
+    protected PooledConnection borrow() throws SQLException {
+        if (closed) throw new SQLException("Connection pool has been closed");
+        long start = System.nanoTime();
+        try {
+            PooledConnection conn = idle.poll();
+            while (conn == null) {
+                if (openConnections.incrementAndGet() <= maxConnections) {
+                    try {
+                        conn = new PooledConnection(DriverManager.getConnection(jdbcString));
+                    } catch (SQLException e) {
+                        openConnections.decrementAndGet();
+                        throw e;
+                    }
+                } else {
+                    openConnections.decrementAndGet();
+                    conn = idle.poll(Constants.DB_BORROW_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+                    if (conn == null) {
+                        throw new SQLException("Timed out waiting for a database connection");
+                    }
+                }
+                if (conn.connection.isClosed()) {
+                    discard(conn);
+                    conn = null;
+                }
+            }
+            activeConnections.incrementAndGet();
+            conn.released.set(false);
+            return conn;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for a database connection", e);
+        } finally {
+            borrows.increment();
+            borrowWaitNanos.add(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Closes every idle connection and stops the pool from handing out
+     * new ones. Connections still borrowed are closed when returned.
+     */
+    protected void close() {
+        closed = true;
+        PooledConnection conn;
+        while ((conn = idle.poll()) != null) {
+            discard(conn);
+        }
+    }
+
+    /**
+     * @return borrow, wait time, connection and statement cache counts of the pool.
+     */
+    protected String getStatistics() {
+        long borrowCount = borrows.sum();
+        double meanWaitMs = borrowCount == 0 ? 0 : borrowWaitNanos.sum() / 1e6 / borrowCount;
+        return "Connection pool: " + borrowCount + " borrows, "
+                + String.format("%.3f", meanWaitMs) + " ms mean borrow wait, "
+                + activeConnections.get() + " active / " + openConnections.get() + " open connections, "
+                + statementHits.sum() + " statement cache hits, " + statementMisses.sum() + " misses";
+    }
+
+    //Only the first call for a borrow returns the connection, as it may be closed more than once.
+    private void release(PooledConnection conn) {
+        if (!conn.released.compareAndSet(false, true)) return;
+        activeConnections.decrementAndGet();
+        try {
+            if (!closed && !conn.connection.isClosed()) {
+                if (!conn.connection.getAutoCommit()) {
+                    //Anything the borrower did not commit is discarded.
+                    conn.connection.rollback();
+                    conn.connection.setAutoCommit(true);
+                }
+                idle.add(conn);
+                return;
+            }
+        } catch (SQLException e) {
+            Log.warn("Could not reset pooled connection: " + e);
+        }
+        discard(conn);
+    }
+
+    private void discard(PooledConnection conn) {
+        openConnections.decrementAndGet();
+        try {
+            for (PreparedStatement statement : conn.statements.values()) {
+                statement.close();
+            }
+            conn.connection.close();
+        } catch (SQLException e) {
+            Log.warn("Could not close pooled connection: " + e);
+        }
+    }
+
+    /**
+     * A connection borrowed from the pool together with the statements
+     * that have been prepared on it.
+     */
+    protected class PooledConnection implements AutoCloseable {
+        private final Connection connection;
+        private final Map<String, PreparedStatement> statements = new HashMap<>();
+        //True once the borrower has returned the connection, set back to false when it is borrowed again.
+        private final AtomicBoolean released = new AtomicBoolean(true);
+
+        private PooledConnection(Connection connection) {
+            this.connection = connection;
+        }
+
+        /**
+         * Returns a prepared statement for the given query, reusing the one
+         * prepared the last time the query was run on this connection.
+         *
+         * @param sql the query to prepare
+         * @return prepared statement for the query
+         * @throws SQLException if the query could not be prepared
+         */
+        protected PreparedStatement prepare(String sql) throws SQLException {
+            PreparedStatement statement = statements.get(sql);
+            if (statement != null && !statement.isClosed()) {
+                statementHits.increment();
+                statement.clearParameters();
+                return statement;
+            }
+            statementMisses.increment();
+            statement = connection.prepareStatement(sql);
+            statements.put(sql, statement);
+            return statement;
+        }
+
+        /**
+         * @return the underlying JDBC connection.
+         */
+        protected Connection getConnection() {
+            return this.connection;
+        }
+
+        /**
+         * Returns the connection to the pool. Closing it again before it
+         * is borrowed again does nothing.
+         */
+        @Override
+        public void close() {
+            release(this);
+        }
+    }
+}
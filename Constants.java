@@ -22,4 +22,22 @@ public class Constants {
     protected static final int HOVER_ANGLE = -999;
     protected static final int MAX_ANGLE_ALLOWED = 350;
     protected static final int DELIVERY_COST = 50;
+    protected static final int WORDS_CACHE_CAPACITY = 4096;
+    protected static final int WORDS_PREFETCH_CONCURRENCY = 16;
+    protected static final int DB_POOL_SIZE = 4;
+    protected static final long DB_BORROW_TIMEOUT_MS = 30000;
+    protected static final int DB_BATCH_SIZE = 500;
+    protected static final double ZONE_INDEX_CELL_SIZE = 0.0005;
+    protected static final double ASTAR_RESOLUTION = MOVE_LENGTH / 20;
+    protected static final int ASTAR_MAX_EXPANSIONS = 500000;
+    protected static final double ASTAR_GOAL_FIELD_RESOLUTION = MOVE_LENGTH / 2;
+    protected static final int ASTAR_GOAL_FIELDS = 256;
+    protected static final long LEG_CACHE_MAX_MOVES = 1000000;
+    protected static final int LOG_QUEUE_CAPACITY = 65536;
+    protected static final int GEOJSON_BUFFER_SIZE = 65536;
+    protected static final long OPTIMISE_TIME_BUDGET_MS = 200;
+    protected static final long OPTIMISE_SEED = 1;
+    protected static final int SHOP_ORDER_MAX_EXPANSIONS = 1000;
+    protected static final double HOME_FIELD_RESOLUTION = MOVE_LENGTH / 10;
+    protected static final int HOME_FIELD_MAX_CELLS = 1 << 24;
 }
@@ -2,15 +2,24 @@ package uk.ac.ed.inf;
 
 import java.sql.*;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
- * Obtains connection and data from the database
+ * Obtains connection and data from the database. By default the Derby
+ * network server at the database port given in the command line is used.
+ * The optional database-url=<jdbc url> argument connects to another database
+ * instead, e.g. jdbc:derby:<directory> to open a copy of the database with
+ * embedded Derby, without a database server running.
  */
-public class DatabaseConnection {
+public class DatabaseConnection implements OrderStore {
 
-    private static String jdbcString = Constants.DB_PROTOCOL + Constants.MACHINE_NAME + IO.database_port + "/derbyDB";
-    private static Statement statement;
+    private final String jdbcString;
+    //True if the rows are tagged with the number of the drone, which
+    // is only the case when a fleet of drones is planned.
+    private final boolean droneIdColumn;
+    private ConnectionPool pool;
 
     /**
      * Class constructor which makes sure to parse the
@@ -20,77 +29,115 @@ public class DatabaseConnection {
      *
      * @param args arguments from the command line
      */
-    public DatabaseConnection(String[] args) { IO.parseArguments(args); }
+    public DatabaseConnection(String[] args) {
+        IO.parseArguments(args);
+        this.jdbcString = IO.getOption("database-url",
+                Constants.DB_PROTOCOL + Constants.MACHINE_NAME + IO.database_port + "/derbyDB");
+        this.droneIdColumn = Integer.parseInt(IO.getOption("drones", "1")) > 1;
+    }
 
     /**
-     * Gets and returns the connection to the database specified by the
-     * jdbcString string.
+     * Borrows a connection to the database from the connection pool,
+     * creating the pool the first time it is needed. The connection
+     * must be closed to return it to the pool.
+     *
      * @return connection to specified database
-     * @throws SQLException
+     * @throws SQLException if no connection became available in time
      */
-    protected static Connection getConn() throws SQLException {
-        Connection conn = DriverManager.getConnection(jdbcString);
+    protected ConnectionPool.PooledConnection getConn() throws SQLException {
+        ConnectionPool currentPool;
+        synchronized (this) {
+            if (pool == null) {
+                pool = new ConnectionPool(jdbcString, Constants.DB_POOL_SIZE);
+            }
+            currentPool = pool;
+        }
         try {
-        // Create a statement object that we can use for running various
-        // SQL statement commands against the database.
-            statement = conn.createStatement();
-        } catch (SQLException e) {
-            System.err.println(e);
-            System.err.println("Fatal error: Unable to connect to database at port "
-                    + IO.database_port + " of " + IO.server_port + ".");
-            System.err.println("Have you checked the database is running?");
+            return currentPool.borrow();
+        } catch (SQLNonTransientConnectionException e) {
+            Log.error(e + System.lineSeparator() + "Fatal error: Unable to connect to database "
+                    + jdbcString + "." + System.lineSeparator()
+                    + "Have you checked the database is running?");
             System.exit(1); // Exit the application
+            return null;
         }
-        return conn;
     }
 
-
     /**
-     * Returns the orders placed on the date given as a parameter that
-     * are stored on the database table called 'orders'.
-     *
-     * @param date
-     * @return list of Order objects representing the orders placed on the
-     *         date given as a parameter.
-     * @throws SQLException
+     * Closes every connection to the database held by the connection pool.
+     * An embedded Derby database is also shut down, so that everything
+     * written to it is on disk.
      */
-    protected List<Order> getOrders(Date date) throws SQLException {
-        final String orderQuery = "select * from orders where deliveryDate=(?)";
-        PreparedStatement psOrderQuery = getConn().prepareStatement(orderQuery);
-        psOrderQuery.setString(1, date.getYear()+"-"+date.getMonth()+"-"+date.getDay());
-
-        List<Order> orderList = new ArrayList<>();
-        ResultSet rs = psOrderQuery.executeQuery();
-        while (rs.next()) {
-            Order order = new Order();
-            order.setDate(rs.getDate("deliveryDate"));
-            order.setOrderNo(rs.getString("orderNo"));
-            order.setMatricNo(rs.getString("customer"));
-            order.setDeliveryLocation(rs.getString("deliverTo"));
-            orderList.add(order);
+    @Override
+    public synchronized void close() {
+        if (pool != null) {
+            Log.info(pool.getStatistics());
+            pool.close();
+            pool = null;
+        }
+        if (jdbcString.startsWith("jdbc:derby:") && !jdbcString.startsWith(Constants.DB_PROTOCOL)) {
+            String database = jdbcString.split(";")[0];
+            try {
+                DriverManager.getConnection(database + ";shutdown=true").close();
+            } catch (SQLException e) {
+                //Derby reports a successful shut down as an exception with this state.
+                if (!"08006".equals(e.getSQLState())) {
+                    Log.warn("Could not shut down " + database + ": " + e);
+                }
+            }
         }
-        return orderList;
     }
 
+
     /**
-     * Returns a list of Strings that represent the items that have been
-     * ordered through the specific order that has been given as a parameter.
-     * @param order
-     * @return a list of Strings that represent the items ordered
+     * Returns the orders placed on the date given as a parameter together
+     * with all of their items, using a single query that joins the tables
+     * 'orders' and 'orderDetails'. Every order is precomputed, i.e. has its
+     * shops and cost worked out, before it is returned.
+     *
+     * @param date      the date to get the orders for
+     * @param catalogue the menus of all the shops a customer can order from
+     * @return list of fully populated Order objects representing the orders
+     *         placed on the date given as a parameter.
      * @throws SQLException
      */
-    protected static List<String> getItemsInOrder(Order order) throws SQLException {
-        final String itemsQuery = "select * from orderDetails where orderNo=(?)";
-        PreparedStatement psItemsQuery = getConn().prepareStatement(itemsQuery);
-        psItemsQuery.setString(1, order.getOrderNo());
-
-        List<String> itemsList = new ArrayList<>();
-        ResultSet rs = psItemsQuery.executeQuery();
-        while (rs.next()) {
-            String item = rs.getString("item");
-            itemsList.add(item);
+    @Override
+    public List<Order> getHydratedOrders(Date date, MenuCatalogue catalogue) throws SQLException {
+        final String ordersWithItemsQuery = "select orders.orderNo, orders.deliveryDate, orders.customer, " +
+                "orders.deliverTo, orderDetails.item from orders left join orderDetails " +
+                "on orders.orderNo = orderDetails.orderNo where orders.deliveryDate=(?)";
+        //Orders are kept in the order they are first seen in the result set.
+        Map<String, Order> ordersByNo = new LinkedHashMap<>();
+        try (ConnectionPool.PooledConnection conn = getConn()) {
+            PreparedStatement psOrdersQuery = conn.prepare(ordersWithItemsQuery);
+            psOrdersQuery.setString(1, date.getYear()+"-"+date.getMonth()+"-"+date.getDay());
+
+            try (ResultSet rs = psOrdersQuery.executeQuery()) {
+                while (rs.next()) {
+                    String orderNo = rs.getString("orderNo");
+                    Order order = ordersByNo.get(orderNo);
+                    if (order == null) {
+                        order = new Order();
+                        order.setDate(rs.getDate("deliveryDate"));
+                        order.setOrderNo(orderNo);
+                        order.setMatricNo(rs.getString("customer"));
+                        order.setDeliveryLocation(rs.getString("deliverTo"));
+                        order.setItemsToBeDelivered(new ArrayList<>());
+                        ordersByNo.put(orderNo, order);
+                    }
+                    String item = rs.getString("item");
+                    if (item != null) {
+                        order.getItemsToBeDelivered().add(item);
+                    }
+                }
+            }
+        }
+
+        List<Order> orderList = new ArrayList<>(ordersByNo.values());
+        for (Order order : orderList) {
+            order.precompute(catalogue);
         }
-        return itemsList;
+        return orderList;
     }
 
     /**
@@ -100,86 +147,131 @@ public class DatabaseConnection {
      *
      * @throws SQLException
      */
-    protected static void dropTablesIfExist() throws SQLException {
-        DatabaseMetaData databaseMetadata = getConn().getMetaData();
-        ResultSet resultSetDeliveries =  databaseMetadata.getTables(null, null, Constants.DELIVERIES, null);
-        ResultSet resultSetFlightpath =  databaseMetadata.getTables(null, null, Constants.FLIGHTPATH, null);
-        // If the resultSet is not empty then the table exists, so we can drop it
-        if (resultSetDeliveries.next()) {
-            statement.execute("drop table deliveries");
-            System.out.println("Table deliveries exists and have been dropped");
-        }
-        if (resultSetFlightpath.next()) {
-            statement.execute("drop table flightpath");
-            System.out.println("Table flightpath exists and have been dropped");
+    protected void dropTablesIfExist() throws SQLException {
+        try (ConnectionPool.PooledConnection conn = getConn();
+             Statement statement = conn.getConnection().createStatement()) {
+            DatabaseMetaData databaseMetadata = conn.getConnection().getMetaData();
+            // If the resultSet is not empty then the table exists, so we can drop it
+            try (ResultSet resultSetDeliveries = databaseMetadata.getTables(null, null, Constants.DELIVERIES, null)) {
+                if (resultSetDeliveries.next()) {
+                    statement.execute("drop table deliveries");
+                    Log.info("Table deliveries exists and have been dropped");
+                }
+            }
+            try (ResultSet resultSetFlightpath = databaseMetadata.getTables(null, null, Constants.FLIGHTPATH, null)) {
+                if (resultSetFlightpath.next()) {
+                    statement.execute("drop table flightpath");
+                    Log.info("Table flightpath exists and have been dropped");
+                }
+            }
         }
     }
 
     /**
      * Method to create the tables 'deliveries' and 'flightpath'.
      * Calls the dropTableIfItExists method to make sure that the
-     * tables can be safely created.
+     * tables can be safely created. When a fleet of drones is
+     * planned, with the optional drones=N argument, every row is
+     * also tagged with the number of the drone in a droneId column.
      *
      * @throws SQLException
      */
-    protected static void createTables() throws SQLException {
+    @Override
+    public void createTables() throws SQLException {
         dropTablesIfExist();
 
-        statement.execute(
-            "create table deliveries(" +
-                "orderNo char(8), " +
-                "deliveredTo varchar(19), " +
-                "costInPence int)");
-
-        statement.execute(
-            "create table flightpath(" +
-                "orderNo char(8), " +
-                "fromLongitude double, " +
-                "fromLatitude double, " +
-                "angle integer, " +
-                "toLongitude double, " +
-                "toLatitude double)");
+        try (ConnectionPool.PooledConnection conn = getConn();
+             Statement statement = conn.getConnection().createStatement()) {
+            statement.execute(
+                "create table deliveries(" +
+                    "orderNo char(8), " +
+                    "deliveredTo varchar(19), " +
+                    "costInPence int" +
+                    (droneIdColumn ? ", droneId int)" : ")"));
+
+            statement.execute(
+                "create table flightpath(" +
+                    "orderNo char(8), " +
+                    "fromLongitude double, " +
+                    "fromLatitude double, " +
+                    "angle integer, " +
+                    "toLongitude double, " +
+                    "toLatitude double" +
+                    (droneIdColumn ? ", droneId int)" : ")"));
+        }
 
     }
 
     /**
-     * Method to insert deliveries made by the drone into
-     * the 'deliveries' table on the database.
+     * Method to insert the deliveries and the moves made by the drone into
+     * the 'deliveries' and 'flightpath' tables in a single transaction.
+     * Rows are sent to the database in batches whose size is given by the
+     * optional batch-size argument. The lists may hold the results of
+     * several dates so that they are all written at once. The moves are
+     * read straight from the arrays of the flight logs.
+     *
      * @param deliveriesMade a list of Order objects of the orders
-     *                       that have been successfully delivered
-     *                       on that date.
-     * @throws SQLException
+     *                       that have been successfully delivered.
+     * @param flightLogs     the logs of all the moves that the drone
+     *                       has made, one per flightpath.
+     * @throws SQLException if a row could not be inserted, in which case
+     *                      none of the rows are inserted.
      */
-    protected static void insertDeliveries(List<Order> deliveriesMade) throws SQLException {
-        PreparedStatement psDelivery = getConn().prepareStatement(
-                "insert into deliveries values (?, ?, ?)");
-        for (Order order : deliveriesMade) {
-            psDelivery.setString(1, order.getOrderNo());
-            psDelivery.setString(2, order.get3WordsAddress());
-            psDelivery.setInt(3, order.getCost());
-            psDelivery.execute();
-        }
-    }
+    @Override
+    public void insertResults(List<Order> deliveriesMade, List<FlightLog> flightLogs) throws SQLException {
+        int batchSize = Integer.parseInt(IO.getOption("batch-size", String.valueOf(Constants.DB_BATCH_SIZE)));
+        long start = System.nanoTime();
+        try (ConnectionPool.PooledConnection conn = getConn()) {
+            conn.getConnection().setAutoCommit(false);
+            PreparedStatement psDelivery = conn.prepare(
+                    droneIdColumn ? "insert into deliveries values (?, ?, ?, ?)"
+                            : "insert into deliveries values (?, ?, ?)");
+            int rowsInBatch = 0;
+            for (Order order : deliveriesMade) {
+                psDelivery.setString(1, order.getOrderNo());
+                psDelivery.setString(2, order.get3WordsAddress());
+                psDelivery.setInt(3, order.getCost());
+                if (droneIdColumn) psDelivery.setInt(4, order.getDroneId());
+                psDelivery.addBatch();
+                if (++rowsInBatch == batchSize) {
+                    psDelivery.executeBatch();
+                    rowsInBatch = 0;
+                }
+            }
+            if (rowsInBatch > 0) psDelivery.executeBatch();
 
-    /**
-     * Method to insert the moves made by the drone into the
-     * 'flightpath' table on the database.
-     * @param moves List of Move objects that represents all the moves
-     *              that the drone has made on that given date.
-     * @throws SQLException
-     */
-    protected static void insertMoves(List<Move> moves) throws SQLException {
-        PreparedStatement psMove = getConn().prepareStatement(
-                "insert into flightpath values (?, ?, ?, ?, ?, ?)");
-        for (Move m : moves) {
-            psMove.setString(1, m.getAssociatedOrder().getOrderNo());
-            psMove.setDouble(2, m.getStartLocation().getLongitude());
-            psMove.setDouble(3, m.getStartLocation().getLatitude());
-            psMove.setInt(4, m.getAngle());
-            psMove.setDouble(5, m.getEndLocation().getLongitude());
-            psMove.setDouble(6, m.getEndLocation().getLatitude());
-            psMove.execute();
-        }
+            PreparedStatement psMove = conn.prepare(
+                    droneIdColumn ? "insert into flightpath values (?, ?, ?, ?, ?, ?, ?)"
+                            : "insert into flightpath values (?, ?, ?, ?, ?, ?)");
+            rowsInBatch = 0;
+            for (FlightLog log : flightLogs) {
+                for (int i = 0; i < log.size(); i++) {
+                    psMove.setString(1, log.getOrder(i).getOrderNo());
+                    psMove.setDouble(2, log.getLongitude(i));
+                    psMove.setDouble(3, log.getLatitude(i));
+                    psMove.setInt(4, log.getAngle(i));
+                    psMove.setDouble(5, log.getLongitude(i + 1));
+                    psMove.setDouble(6, log.getLatitude(i + 1));
+                    if (droneIdColumn) psMove.setInt(7, log.getDroneId());
+                    psMove.addBatch();
+                    if (++rowsInBatch == batchSize) {
+                        psMove.executeBatch();
+                        rowsInBatch = 0;
+                    }
+                }
+            }
+            if (rowsInBatch > 0) psMove.executeBatch();
 
+            conn.getConnection().commit();
+        }
+        // If anything failed the connection pool rolls back the transaction
+        // when the connection is returned to it.
+        double seconds = (System.nanoTime() - start) / 1e9;
+        int rows = deliveriesMade.size();
+        for (FlightLog log : flightLogs) {
+            rows += log.size();
+        }
+        Log.info("Inserted " + rows + " rows in " + String.format("%.3f", seconds)
+                + " s (" + String.format("%.0f", rows / seconds) + " rows/s)");
     }
 }
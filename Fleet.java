@@ -0,0 +1,236 @@
+package uk.ac.ed.inf;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Plans the flightpaths of several drones delivering the orders of the
+ * same date, selected with the optional drones=N argument. The orders are
+ * split into as many sectors around the starting position as there are
+ * drones, each with about the same number of orders, so that every drone
+ * works on its own part of the map. Each drone then has its own move
+ * budget and flight log and its flightpath is planned on its own thread,
+ * all of them sharing the same map data and cache of planned legs.
+ *
+ * The flightpaths are written to one geojson file with a feature for
+ * each drone, and the rows written to the database are tagged with the
+ * number of the drone.
+ */
+public class Fleet {
+
+    private final MapData map;
+    private final Date date;
+    //Flightpath of each drone, the drone with number i at index i - 1.
+    private final List<BuildFlightpath> drones = new ArrayList<>();
+
+    private int totalNumberOfOrders;
+    private long setUpServerRequests;
+
+    /**
+     * Class constructor for a fleet of drones on the given date.
+     *
+     * @param map        the no-fly zones, landmarks and shops
+     * @param date       the date the orders are executed on
+     * @param droneCount number of drones in the fleet
+     * @throws IllegalArgumentException if there are no drones
+     */
+    protected Fleet(MapData map, Date date, int droneCount) {
+        if (droneCount < 1) {
+            throw new IllegalArgumentException("A fleet needs at least one drone. Given: " + droneCount);
+        }
+        this.map = map;
+        this.date = date;
+        for (int id = 1; id <= droneCount; id++) {
+            drones.add(new BuildFlightpath(map, date, id));
+        }
+    }
+
+    /**
+     * Gets the orders placed on the date of the fleet from the database
+     * and shares them out between the drones.
+     *
+     * @param orderStore where the orders are obtained from
+     * @throws SQLException
+     */
+    protected void setUp(OrderStore orderStore) throws SQLException {
+        long serverRequestsBefore = ServerRequest.getRequestCount();
+        setUp(orderStore.getHydratedOrders(date, map.getMenuCatalogue()));
+        setUpServerRequests = ServerRequest.getRequestCount() - serverRequestsBefore;
+    }
+
+    /**
+     * Shares out the given orders, which must already know their shops
+     * and cost, between the drones.
+     *
+     * @param hydratedOrders the orders placed on the date of the fleet
+     */
+    protected void setUp(List<Order> hydratedOrders) {
+        BuildFlightpath.prefetchAddresses(map, hydratedOrders);
+        totalNumberOfOrders = hydratedOrders.size();
+        List<List<Order>> shares = splitOrders(hydratedOrders, drones.size());
+        for (int i = 0; i < drones.size(); i++) {
+            Log.info("Drone " + drones.get(i).getDroneId() + " is given " + shares.get(i).size() + " orders");
+            drones.get(i).queueOrders(shares.get(i));
+        }
+    }
+
+    /**
+     * Splits the orders into sectors around the starting position, sorting
+     * them by the bearing of their delivery location and cutting the sorted
+     * list into parts whose sizes differ by at most one. The sorted list
+     * starts after the largest gap between the bearings of consecutive
+     * orders, so that orders on either side of the west, where the bearing
+     * goes from pi to -pi, are not split between drones unless they have to be.
+     *
+     * @param orders     the orders to split, with their addresses resolved
+     * @param droneCount number of parts
+     * @return the orders of each part
+     */
+    protected static List<List<Order>> splitOrders(List<Order> orders, int droneCount) {
+        List<Order> sorted = new ArrayList<>(orders);
+        sorted.sort(Comparator.comparingDouble(Fleet::getBearing));
+        int first = 0;
+        double largestGap = -1;
+        for (int i = 0; i < sorted.size(); i++) {
+            double previous = getBearing(sorted.get(i == 0 ? sorted.size() - 1 : i - 1));
+            double gap = getBearing(sorted.get(i)) - previous + (i == 0 ? 2 * Math.PI : 0);
+            if (gap > largestGap) {
+                largestGap = gap;
+                first = i;
+            }
+        }
+        Collections.rotate(sorted, -first);
+        List<List<Order>> shares = new ArrayList<>(droneCount);
+        for (int i = 0; i < droneCount; i++) {
+            int from = (int) ((long) sorted.size() * i / droneCount);
+            int to = (int) ((long) sorted.size() * (i + 1) / droneCount);
+            shares.add(new ArrayList<>(sorted.subList(from, to)));
+        }
+        return shares;
+    }
+
+    //Bearing of the delivery location of an order from the starting position, from -pi to pi.
+    private static double getBearing(Order order) {
+        Location start = Constants.START_LOCATION;
+        return Math.atan2(order.getDeliveryLocation().getLatitude() - start.getLatitude(),
+                order.getDeliveryLocation().getLongitude() - start.getLongitude());
+    }
+
+    /**
+     * Plans the flightpath of every drone, each on its own thread, and
+     * waits until they are all planned.
+     *
+     * @throws IllegalStateException if the flightpath of a drone could not be planned
+     */
+    protected void executeOrders() {
+        int threads = Math.min(drones.size(), Runtime.getRuntime().availableProcessors());
+        AtomicInteger threadNo = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(threads,
+                task -> new Thread(task, "fleet-" + threadNo.incrementAndGet()));
+        try {
+            List<Callable<Void>> tasks = new ArrayList<>();
+            for (BuildFlightpath drone : drones) {
+                tasks.add(() -> {
+                    drone.executeOrders();
+                    return null;
+                });
+            }
+            for (Future<Void> planned : executor.invokeAll(tasks)) {
+                planned.get();
+            }
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException("Could not plan the flightpath of a drone", e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while planning the flightpaths of the fleet", e);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Plans the flightpaths of the drones and writes them to a geojson
+     * file, with a feature for each drone.
+     */
+    protected void buildMap() {
+        long start = System.nanoTime();
+        executeOrders();
+        double millis = (System.nanoTime() - start) / 1e6;
+        IO.writeReadingFile(date, this::writeGeojsonMap);
+        int moves = 0;
+        for (BuildFlightpath drone : drones) {
+            Log.info("Drone " + drone.getDroneId() + ": orders delivered: " + drone.getCompletedOrders().size()
+                    + " / " + drone.getTotalNumberOfOrders() + ", moves: " + drone.getChosenMoves().size());
+            moves += drone.getChosenMoves().size();
+        }
+        Log.info("Date: " + date.getYear() + "-" + date.getMonth() + "-" + date.getDay()
+                + ", drones: " + drones.size()
+                + ", orders delivered: " + getCompletedOrders().size() + " / " + totalNumberOfOrders
+                + ", moves: " + moves + ", planned in " + String.format("%.1f", millis) + " ms"
+                + ", server requests: " + setUpServerRequests + " setting up");
+    }
+
+    /**
+     * Writes the flightpaths of the drones, one feature for each. With
+     * the optional geojson-orders=true argument the moves made for each
+     * order are also written as separate features.
+     *
+     * @param out where the json of the map is written to
+     * @throws IOException if the writer fails
+     */
+    protected void writeGeojsonMap(Writer out) throws IOException {
+        boolean perOrderFeatures = Boolean.parseBoolean(IO.getOption("geojson-orders", "false"));
+        new GeojsonWriter(out).writeFleet(getFlightLogs(), perOrderFeatures);
+    }
+
+    /**
+     * Writes the deliveries made and the moves of every drone to the database.
+     *
+     * @param orderStore where the results are written to
+     * @throws SQLException
+     */
+    protected void updateTables(OrderStore orderStore) throws SQLException {
+        orderStore.insertResults(getCompletedOrders(), getFlightLogs());
+    }
+
+    /**
+     * @return list of the orders completed by all the drones.
+     */
+    protected List<Order> getCompletedOrders() {
+        List<Order> completed = new ArrayList<>();
+        for (BuildFlightpath drone : drones) {
+            completed.addAll(drone.getCompletedOrders());
+        }
+        return completed;
+    }
+
+    /**
+     * @return the log of the moves of each drone.
+     */
+    protected List<FlightLog> getFlightLogs() {
+        List<FlightLog> flightLogs = new ArrayList<>();
+        for (BuildFlightpath drone : drones) {
+            flightLogs.add(drone.getChosenMoves());
+        }
+        return flightLogs;
+    }
+
+    /**
+     * @return the flightpath of each drone.
+     */
+    protected List<BuildFlightpath> getDrones() { return this.drones; }
+}
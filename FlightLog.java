@@ -0,0 +1,260 @@
+package uk.ac.ed.inf;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * Stores the moves of a flightpath as parallel arrays of primitives
+ * instead of Move and Location objects. Position 0 is the location the
+ * drone starts from and position i + 1 is where move i ends, so each move
+ * starts where the previous one ended. For each move the angle is kept as
+ * a short and the order it was made for as an index into a table of the
+ * orders, which only grows when the order changes from one move to the next.
+ *
+ * A move takes 22 bytes this way, against the few hundred bytes of a Move
+ * with its two Locations and their Points. Code that still wants Move
+ * objects can use getMove or the asMoves view, which builds them on demand.
+ */
+public class FlightLog {
+
+    private static final int DEFAULT_CAPACITY = 64;
+
+    //Longitude and latitude of each position, size + 1 of them in use.
+    private double[] longitudes;
+    private double[] latitudes;
+    //Angle and index of the order of each move.
+    private short[] angles;
+    private int[] orderIndices;
+    //Orders the moves were made for, indexed by orderIndices.
+    private final List<Order> orders = new ArrayList<>();
+    //Number of moves.
+    private int size;
+    //Number of the drone that made the moves, from 1.
+    private int droneId = 1;
+
+    /**
+     * Class constructor for an empty log starting at the given location.
+     *
+     * @param start the location the drone starts from
+     */
+    protected FlightLog(Location start) {
+        this(start, DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Class constructor for an empty log with room for the given
+     * number of moves before it has to grow.
+     *
+     * @param start    the location the drone starts from
+     * @param capacity number of moves expected
+     */
+    protected FlightLog(Location start, int capacity) {
+        capacity = Math.max(capacity, 1);
+        longitudes = new double[capacity + 1];
+        latitudes = new double[capacity + 1];
+        angles = new short[capacity];
+        orderIndices = new int[capacity];
+        clear(start);
+    }
+
+    /**
+     * Removes every move and moves the start of the log to the given location.
+     *
+     * @param start the location the drone starts from
+     */
+    protected void clear(Location start) {
+        size = 0;
+        orders.clear();
+        longitudes[0] = start.getLongitude();
+        latitudes[0] = start.getLatitude();
+    }
+
+    /**
+     * Adds a move starting where the last one ended.
+     *
+     * @param longitude longitude of where the move ends
+     * @param latitude  latitude of where the move ends
+     * @param angle     angle of the move, or the hovering angle
+     * @param order     the order the move is made for
+     */
+    protected void add(double longitude, double latitude, int angle, Order order) {
+        if (size == angles.length) {
+            grow();
+        }
+        int orderIndex = orders.size() - 1;
+        if (orderIndex < 0 || orders.get(orderIndex) != order) {
+            orders.add(order);
+            orderIndex++;
+        }
+        longitudes[size + 1] = longitude;
+        latitudes[size + 1] = latitude;
+        angles[size] = (short) angle;
+        orderIndices[size] = orderIndex;
+        size++;
+    }
+
+    /**
+     * Adds a move starting where the last one ended. Only the end location
+     * and the angle of the move are kept.
+     *
+     * @param move  the move to add
+     * @param order the order the move is made for
+     */
+    protected void add(Move move, Order order) {
+        Location end = move.getEndLocation();
+        add(end.getLongitude(), end.getLatitude(), move.getAngle(), order);
+    }
+
+    /**
+     * Adds all the moves of another log, which is assumed to start where
+     * this one ends.
+     *
+     * @param other the log whose moves are added
+     */
+    protected void addAll(FlightLog other) {
+        for (int i = 0; i < other.size; i++) {
+            add(other.longitudes[i + 1], other.latitudes[i + 1], other.angles[i], other.getOrder(i));
+        }
+    }
+
+    /**
+     * Removes the moves after the given number of moves, so that the log
+     * ends where move size - 1 ends.
+     *
+     * @param size number of moves to keep
+     */
+    protected void truncate(int size) {
+        if (size < 0 || size > this.size) {
+            throw new IndexOutOfBoundsException("Cannot keep " + size + " moves out of " + this.size);
+        }
+        this.size = size;
+        int ordersUsed = size == 0 ? 0 : orderIndices[size - 1] + 1;
+        orders.subList(ordersUsed, orders.size()).clear();
+    }
+
+    private void grow() {
+        int capacity = angles.length * 2;
+        longitudes = Arrays.copyOf(longitudes, capacity + 1);
+        latitudes = Arrays.copyOf(latitudes, capacity + 1);
+        angles = Arrays.copyOf(angles, capacity);
+        orderIndices = Arrays.copyOf(orderIndices, capacity);
+    }
+
+    /**
+     * @return number of the drone that made the moves, from 1.
+     */
+    protected int getDroneId() { return this.droneId; }
+
+    /**
+     * @param droneId number of the drone that made the moves, from 1
+     */
+    protected void setDroneId(int droneId) { this.droneId = droneId; }
+
+    /**
+     * @return number of moves in the log.
+     */
+    protected int size() { return this.size; }
+
+    /**
+     * @return true if there are no moves in the log.
+     */
+    protected boolean isEmpty() { return this.size == 0; }
+
+    /**
+     * @param position 0 for the start of the log or i + 1 for the end of move i
+     * @return longitude of the position.
+     */
+    protected double getLongitude(int position) {
+        checkPosition(position);
+        return longitudes[position];
+    }
+
+    /**
+     * @param position 0 for the start of the log or i + 1 for the end of move i
+     * @return latitude of the position.
+     */
+    protected double getLatitude(int position) {
+        checkPosition(position);
+        return latitudes[position];
+    }
+
+    /**
+     * @param position 0 for the start of the log or i + 1 for the end of move i
+     * @return the position as a Location.
+     */
+    protected Location getLocation(int position) {
+        checkPosition(position);
+        return new Location(longitudes[position], latitudes[position]);
+    }
+
+    /**
+     * @return the location where the last move ends, or the start of
+     *         the log if there are no moves.
+     */
+    protected Location getEndLocation() {
+        return new Location(longitudes[size], latitudes[size]);
+    }
+
+    /**
+     * @param move index of the move
+     * @return angle of the move.
+     */
+    protected int getAngle(int move) {
+        checkMove(move);
+        return angles[move];
+    }
+
+    /**
+     * @param move index of the move
+     * @return the order the move was made for.
+     */
+    protected Order getOrder(int move) {
+        checkMove(move);
+        return orders.get(orderIndices[move]);
+    }
+
+    /**
+     * Builds a Move object for one of the moves of the log, numbered by
+     * its index in the log.
+     *
+     * @param move index of the move
+     * @return the move, with its associated order set
+     */
+    protected Move getMove(int move) {
+        checkMove(move);
+        Move m = new Move(getLocation(move), getLocation(move + 1), move, angles[move]);
+        m.setAssociatedOrder(getOrder(move));
+        return m;
+    }
+
+    /**
+     * @return read-only list of the moves of the log, building each Move
+     *         only when it is asked for.
+     */
+    protected List<Move> asMoves() {
+        return new MoveView();
+    }
+
+    private void checkPosition(int position) {
+        if (position < 0 || position > size) {
+            throw new IndexOutOfBoundsException("Position " + position + " out of " + (size + 1));
+        }
+    }
+
+    private void checkMove(int move) {
+        if (move < 0 || move >= size) {
+            throw new IndexOutOfBoundsException("Move " + move + " out of " + size);
+        }
+    }
+
+    private class MoveView extends AbstractList<Move> implements RandomAccess {
+        @Override
+        public Move get(int index) { return getMove(index); }
+
+        @Override
+        public int size() { return size; }
+    }
+}
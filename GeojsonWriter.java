@@ -0,0 +1,159 @@
+package uk.ac.ed.inf;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.List;
+
+/**
+ * Writes the flightpath of the drone as a GeoJSON FeatureCollection straight
+ * from the log of moves, in a single pass and without building Points,
+ * Features or a string holding the whole map first. The line of the whole
+ * flightpath is written exactly as Mapbox's FeatureCollection.toJson() would
+ * write it, with the coordinates rounded to 7 decimal places.
+ *
+ * Optionally a feature is also written for every run of consecutive moves
+ * made for the same order, with the order number and the range of moves
+ * as properties. The flightpaths of a fleet of drones are written as one
+ * feature per drone.
+ */
+public class GeojsonWriter {
+
+    //Same rounding as Mapbox's GeoJsonUtils.trim.
+    private static final double ROUND_PRECISION = 10000000.0;
+    private static final long MAX_DOUBLE_TO_ROUND = (long) (Long.MAX_VALUE / ROUND_PRECISION);
+
+    private final Writer out;
+
+    /**
+     * Class constructor specifying where to write to. The writer should
+     * be buffered as the map is written a few characters at a time.
+     *
+     * @param out where the GeoJSON is written to
+     */
+    protected GeojsonWriter(Writer out) {
+        this.out = out;
+    }
+
+    /**
+     * Writes the FeatureCollection of the flightpath.
+     *
+     * @param moves            the moves the drone makes, in order
+     * @param perOrderFeatures true to also write a feature for the moves
+     *                         made for each order
+     * @throws IOException if the writer fails
+     */
+    protected void write(FlightLog moves, boolean perOrderFeatures) throws IOException {
+        out.write("{\"type\":\"FeatureCollection\",\"features\":[");
+        writeLine(moves, 0, moves.size());
+        out.write("]},\"properties\":{}}");
+        if (perOrderFeatures) {
+            writeOrderFeatures(moves, "");
+        }
+        out.write("]}");
+    }
+
+    /**
+     * Writes the FeatureCollection of the flightpaths of a fleet, with a
+     * feature for each drone that has its number as a property. The
+     * feature of a drone that made no moves has a null geometry.
+     *
+     * @param flightLogs       the moves of each drone, in order
+     * @param perOrderFeatures true to also write a feature for the moves
+     *                         made for each order
+     * @throws IOException if the writer fails
+     */
+    protected void writeFleet(List<FlightLog> flightLogs, boolean perOrderFeatures) throws IOException {
+        out.write("{\"type\":\"FeatureCollection\",\"features\":[");
+        for (int d = 0; d < flightLogs.size(); d++) {
+            FlightLog moves = flightLogs.get(d);
+            if (d > 0) out.write(',');
+            if (moves.isEmpty()) {
+                //A line needs two positions, so a drone that never took off has no geometry.
+                out.write("{\"type\":\"Feature\",\"geometry\":null");
+            } else {
+                writeLine(moves, 0, moves.size());
+                out.write("]}");
+            }
+            out.write(",\"properties\":{\"droneId\":" + moves.getDroneId() + "}}");
+        }
+        if (perOrderFeatures) {
+            for (FlightLog moves : flightLogs) {
+                writeOrderFeatures(moves, ",\"droneId\":" + moves.getDroneId());
+            }
+        }
+        out.write("]}");
+    }
+
+    //Writes a feature for every run of consecutive moves made for the same
+    // order, followed by the given extra properties.
+    private void writeOrderFeatures(FlightLog moves, String extraProperties) throws IOException {
+        int first = 0;
+        while (first < moves.size()) {
+            Order order = moves.getOrder(first);
+            int last = first;
+            while (last + 1 < moves.size() && moves.getOrder(last + 1) == order) {
+                last++;
+            }
+            out.write(',');
+            writeLine(moves, first, last + 1);
+            out.write("]},\"properties\":{\"orderNo\":");
+            writeString(order == null ? null : order.getOrderNo());
+            out.write(",\"firstMove\":" + first + ",\"lastMove\":" + last + ",\"moves\":" + (last - first + 1)
+                    + extraProperties + "}}");
+            first = last + 1;
+        }
+    }
+
+    //Writes the start of a LineString feature through the given positions
+    // of the log, leaving the coordinates array open.
+    private void writeLine(FlightLog moves, int firstPosition, int lastPosition) throws IOException {
+        writeLineStart(moves, firstPosition);
+        for (int i = firstPosition + 1; i <= lastPosition; i++) {
+            writeCoordinate(moves, i);
+        }
+    }
+
+    private void writeLineStart(FlightLog moves, int position) throws IOException {
+        out.write("{\"type\":\"Feature\",\"geometry\":{\"type\":\"LineString\",\"coordinates\":[");
+        out.write('[');
+        writeNumber(moves.getLongitude(position));
+        out.write(',');
+        writeNumber(moves.getLatitude(position));
+        out.write(']');
+    }
+
+    private void writeCoordinate(FlightLog moves, int position) throws IOException {
+        out.write(",[");
+        writeNumber(moves.getLongitude(position));
+        out.write(',');
+        writeNumber(moves.getLatitude(position));
+        out.write(']');
+    }
+
+    private void writeNumber(double value) throws IOException {
+        if (value <= MAX_DOUBLE_TO_ROUND && value >= -MAX_DOUBLE_TO_ROUND) {
+            value = Math.round(value * ROUND_PRECISION) / ROUND_PRECISION;
+        }
+        out.write(Double.toString(value));
+    }
+
+    private void writeString(String value) throws IOException {
+        if (value == null) {
+            out.write("null");
+            return;
+        }
+        out.write('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                out.write('\\');
+                out.write(c);
+            } else if (c < 0x20) {
+                out.write(String.format("\\u%04x", (int) c));
+            } else {
+                out.write(c);
+            }
+        }
+        out.write('"');
+    }
+}
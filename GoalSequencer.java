@@ -0,0 +1,172 @@
+package uk.ac.ed.inf;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Chooses the order the shops of an order are visited in by the number of
+ * moves the drone actually needs rather than by straight-line distance.
+ * Every order of the shops is tried, adding up the moves of each leg (from
+ * the drone to a shop, between shops and from the last shop to the
+ * delivery point). Legs are either only estimated or planned by the route
+ * planner, so that detours around the no-fly zones are taken into account.
+ * Estimating is used to put an order in line without planning anything,
+ * and planning only once the order may still fit in the moves the drone
+ * has left.
+ *
+ * An estimated first leg counts its exact moves if the cache of planned
+ * legs already knows them, and every other estimated leg the lower bound
+ * from its straight-line distance less the tolerance, as the drone only
+ * gets close to a shop. A planned leg starts where the previous planned
+ * leg ends, as the legs of the drone do, so the moves compared are those
+ * of the legs the drone flies and the leg cache has them when it does.
+ *
+ * Orders have at most two shops, so this is at most two orders of the
+ * shops and six legs. For orders with more shops the search is a branch
+ * and bound, starting from the shops visited closest first and stopping
+ * after a fixed number of partial orders, so it stays bounded however
+ * many shops there are.
+ */
+public class GoalSequencer {
+
+    //Moves counted for a leg the planner could not find a route for.
+    private static final int UNREACHABLE = Integer.MAX_VALUE / 64;
+
+    private final RoutePlanner planner;
+    private final int maxExpansions;
+
+    //State of the search currently running.
+    private boolean planLegs;
+    private List<Location> shops;
+    private Location deliveryLocation;
+    private int[] bestSequence;
+    private int bestMoves;
+    private int expansions;
+    //Where the drone is after the leg last counted by getLegMoves.
+    private Location legEnd;
+
+    /**
+     * Class constructor specifying the planner counting the moves.
+     *
+     * @param planner       the route planner, which should go through the leg cache
+     * @param maxExpansions the number of partial orders of the shops after
+     *                      which the search stops with the best order found
+     */
+    protected GoalSequencer(RoutePlanner planner, int maxExpansions) {
+        this.planner = planner;
+        this.maxExpansions = maxExpansions;
+    }
+
+    /**
+     * Returns the key-locations the drone visits to execute an order: its
+     * shops in the order needing the fewest moves, then its delivery point.
+     * Ties go to the shops visited closest first. Nothing is planned or
+     * estimated for an order with a single shop, as there is only one order
+     * to visit it in.
+     *
+     * @param order           the order to execute
+     * @param shopsInOrder    the shops of the order
+     * @param currentLocation the location of the drone
+     * @param planLegs        true to plan the legs whose moves are not known
+     *                        yet, false to count the lower bound of their
+     *                        moves instead
+     * @return the shop locations in the order they are visited, followed by
+     *         the delivery location
+     */
+    protected List<Location> getGoalLocationsForOrder(Order order, List<Shop> shopsInOrder, Location currentLocation,
+                                                      boolean planLegs) {
+        this.planLegs = planLegs;
+        shops = new ArrayList<>(shopsInOrder.size());
+        for (Shop shop : shopsInOrder) {
+            shops.add(shop.getShopLocation());
+        }
+        deliveryLocation = order.getDeliveryLocation();
+        if (shops.size() <= 1) {
+            List<Location> goalLocations = new ArrayList<>(shops);
+            goalLocations.add(deliveryLocation);
+            return goalLocations;
+        }
+
+        //The shops visited closest first are the first order tried. On equal
+        // distances the later shop goes first, as in Utils.getGoalLocationsForOrder.
+        int k = shops.size();
+        bestSequence = new int[k];
+        boolean[] visited = new boolean[k];
+        Location at = currentLocation;
+        for (int depth = 0; depth < k; depth++) {
+            int closest = -1;
+            for (int shop = 0; shop < k; shop++) {
+                if (!visited[shop] && (closest == -1
+                        || Utils.getDistance(at, shops.get(shop)) <= Utils.getDistance(at, shops.get(closest)))) {
+                    closest = shop;
+                }
+            }
+            visited[closest] = true;
+            bestSequence[depth] = closest;
+            at = shops.get(closest);
+        }
+        bestMoves = getMoves(currentLocation, bestSequence);
+        expansions = 0;
+        search(new int[k], new boolean[k], 0, currentLocation, 0);
+
+        List<Location> goalLocations = new ArrayList<>(k + 1);
+        for (int shop : bestSequence) {
+            goalLocations.add(shops.get(shop));
+        }
+        goalLocations.add(deliveryLocation);
+        return goalLocations;
+    }
+
+    private void search(int[] sequence, boolean[] visited, int depth, Location at, int moves) {
+        if (moves >= bestMoves || expansions >= maxExpansions) return;
+        expansions++;
+        if (depth == sequence.length) {
+            int total = moves + getLegMoves(at, deliveryLocation, true);
+            if (total < bestMoves) {
+                bestMoves = total;
+                bestSequence = sequence.clone();
+            }
+            return;
+        }
+        for (int shop = 0; shop < sequence.length; shop++) {
+            if (visited[shop]) continue;
+            visited[shop] = true;
+            sequence[depth] = shop;
+            int legMoves = getLegMoves(at, shops.get(shop), depth > 0);
+            search(sequence, visited, depth + 1, legEnd, moves + legMoves);
+            visited[shop] = false;
+        }
+    }
+
+    private int getMoves(Location from, int[] sequence) {
+        int moves = 0;
+        Location at = from;
+        for (int shop : sequence) {
+            moves += getLegMoves(at, shops.get(shop), at != from);
+            at = legEnd;
+        }
+        return moves + getLegMoves(at, deliveryLocation, true);
+    }
+
+    //Moves of a leg including the hovering move at its end, setting legEnd.
+    // An estimated leg from a key-location starts anywhere within the
+    // tolerance of it, so its lower bound is taken from the distance less
+    // the tolerance, as in BuildFlightpath.getMovesLowerBound. A planned
+    // leg starts from where the previous planned leg ended.
+    private int getLegMoves(Location start, Location goal, boolean fromKeyLocation) {
+        legEnd = goal;
+        if (!planLegs) {
+            int known = fromKeyLocation ? -1 : planner.getKnownMoveCount(start, goal);
+            if (known >= 0) return known + 1;
+            double distance = Utils.getDistance(start, goal) - (fromKeyLocation ? Constants.DISTANCE_TOLERANCE : 0);
+            return AStarPlanner.movesLowerBound(Math.max(distance, 0)) + 1;
+        }
+        try {
+            List<Move> leg = planner.planLeg(start, goal);
+            legEnd = leg.isEmpty() ? start : leg.get(leg.size() - 1).getEndLocation();
+            return leg.size() + 1;
+        } catch (IllegalStateException e) {
+            return UNREACHABLE;
+        }
+    }
+}
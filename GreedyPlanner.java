@@ -0,0 +1,106 @@
+package uk.ac.ed.inf;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Plans routes by always making the move that gets the drone closest to its
+ * goal. When a move would cross a no-fly zone the moves made so far are
+ * discarded and the drone is sent through the closest landmark instead.
+ */
+public class GreedyPlanner implements RoutePlanner {
+
+    private final NoFlyZoneIndex noFlyZoneIndex;
+    //The landmarks the drone can use as an intermediate step in order to
+    // go around the no-fly zones. Never modified, landmarks that did not
+    // help are only left out for the rest of the leg being planned.
+    private final List<Landmark> landmarks;
+
+    /**
+     * Class constructor specifying the no-fly zones and the landmarks.
+     *
+     * @param noFlyZoneIndex spatial index of the no-fly zones to avoid
+     * @param landmarks      the landmarks the drone can use to go around
+     *                       the no-fly zones
+     */
+    protected GreedyPlanner(NoFlyZoneIndex noFlyZoneIndex, List<Landmark> landmarks) {
+        this.noFlyZoneIndex = noFlyZoneIndex;
+        this.landmarks = List.copyOf(landmarks);
+    }
+
+    @Override
+    public List<Move> planLeg(Location startLocation, Location goalLocation) {
+        return planLeg(startLocation, goalLocation, null, new boolean[landmarks.size()]);
+    }
+
+    /**
+     * Moves greedily towards the goal location. If a move intersects a
+     * no-fly zone the moves are discarded and the route is planned again
+     * through the landmark closest to the goal. If the route to or from
+     * that landmark also runs into a no-fly zone the landmark is not
+     * considered again for the rest of the leg and the next closest one
+     * is tried.
+     *
+     * @param startLocation the location the drone starts from
+     * @param goalLocation  the location the drone needs to get close to
+     * @param landmark      the landmark of the detour the route is part of,
+     *                      or null if it is not part of a detour
+     * @param excluded      flags of the landmarks left out for this leg
+     * @return the moves in the order they are made
+     */
+    private List<Move> planLeg(Location startLocation, Location goalLocation, Landmark landmark, boolean[] excluded) {
+        List<Move> leg = new ArrayList<>();
+        Location pretendCurrentLocation = startLocation;
+
+        while (true) {
+            Move optimalMove = Utils.getOptimalMove(pretendCurrentLocation, goalLocation, BuildFlightpath.DUMMY_MOVE_NO);
+            if (Utils.doesIntersectWithNoFlyZones(noFlyZoneIndex, optimalMove.getStartLocation(), optimalMove.getEndLocation())) {
+                int movesDiscarded = leg.size();
+                Log.debug(() -> "Optimal move does intersect perimeter of no-fly zone. The moves used from "
+                        + "previous checkpoint to the intersection is: " + movesDiscarded);
+                if (landmark != null) {
+                    excluded[landmarks.indexOf(landmark)] = true;
+                }
+                Landmark landmarkToBeUsed = getClosestLandmark(goalLocation, excluded);
+                if (landmarkToBeUsed == null) {
+                    throw new IllegalStateException("Landmarks are not useful for this task!");
+                }
+                List<Move> detour = planLeg(startLocation, landmarkToBeUsed.getLocation(), landmarkToBeUsed, excluded);
+                Location landmarkReached = detour.isEmpty()
+                        ? startLocation : detour.get(detour.size() - 1).getEndLocation();
+                detour.addAll(planLeg(landmarkReached, goalLocation, landmarkToBeUsed, excluded));
+                return detour;
+            }
+
+            pretendCurrentLocation = optimalMove.getEndLocation();
+            leg.add(optimalMove);
+            Log.trace(() -> "Move " + optimalMove.getAngle() + " to " + optimalMove.getEndLocation()
+                    + ", distance to goal " + Utils.getDistance(optimalMove.getEndLocation(), goalLocation));
+            if (Utils.isClose(pretendCurrentLocation, goalLocation)) {
+                return leg;
+            }
+        }
+    }
+
+    /**
+     * Returns the landmark closest to the given location out of the
+     * landmarks that have not been left out.
+     *
+     * @param location the location to measure the distances from
+     * @param excluded flags of the landmarks left out
+     * @return the closest landmark, or null if all of them are left out
+     */
+    private Landmark getClosestLandmark(Location location, boolean[] excluded) {
+        Landmark closest = null;
+        double minDistance = Double.MAX_VALUE;
+        for (int i = 0; i < landmarks.size(); i++) {
+            if (excluded[i]) continue;
+            double distance = Utils.getDistance(landmarks.get(i).getLocation(), location);
+            if (distance < minDistance) {
+                minDistance = distance;
+                closest = landmarks.get(i);
+            }
+        }
+        return closest;
+    }
+}
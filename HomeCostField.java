@@ -0,0 +1,429 @@
+package uk.ac.ed.inf;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.geom.Polygon;
+import org.locationtech.jts.geom.prep.PreparedPolygon;
+
+/**
+ * Lower bound of the moves needed to get back to the starting position
+ * from anywhere in the confinement area, worked out once for a set of
+ * no-fly zones so that the return of the drone can be bounded with one
+ * lookup instead of planning it.
+ *
+ * The confinement area is divided into square cells and the field holds a
+ * number of moves for each cell, found with a breadth-first search going
+ * backwards from the cells the drone can finish its return in. Two cells
+ * are one move apart if some point of one is within a move of some point
+ * of the other, and cells lying wholly inside a no-fly zone can not be
+ * flown through. As every point of a flown route lies in a cell and
+ * consecutive points are then at most one move apart, the moves of the
+ * field never exceed the moves of a route the drone can actually fly, so
+ * the field is a lower bound whatever the route planner. Finer cells give
+ * a tighter bound but take more memory and longer to work out.
+ *
+ * A field can be written to a file and read back by a later run, which
+ * checks that it was worked out for the same no-fly zones, starting
+ * position and cell size. It is also part of the compiled map, see
+ * MapArtifact.
+ *
+ * A field towards any other goal can be worked out on the grid of a field,
+ * reusing the cells it found inside the no-fly zones, which AStarPlanner
+ * uses as the lower bound of the moves left to its goal.
+ */
+public class HomeCostField {
+
+    private static final int MAGIC = 0x484F4D45;
+    private static final int VERSION = 1;
+    //Moves of a cell lying inside a no-fly zone.
+    private static final short BLOCKED = -1;
+    //Moves of a cell the starting position can not be reached from.
+    private static final short UNREACHABLE = Short.MAX_VALUE;
+
+    private final double cellSize;
+    private final int columns;
+    private final int rows;
+    //Location the moves of the field lead to, the starting position for a home field.
+    private final double goalLng;
+    private final double goalLat;
+    //Hash of the no-fly zones, goal and move length the field is for.
+    private final long zonesHash;
+    //Moves from each cell, indexed by row * columns + column.
+    private final short[] moves;
+
+    private final String origin;
+    private final double millis;
+
+    private HomeCostField(double cellSize, double goalLng, double goalLat, long zonesHash, short[] moves,
+                          String origin, double millis) {
+        this.cellSize = cellSize;
+        this.columns = columnsFor(cellSize);
+        this.rows = rowsFor(cellSize);
+        this.goalLng = goalLng;
+        this.goalLat = goalLat;
+        this.zonesHash = zonesHash;
+        this.moves = moves;
+        this.origin = origin;
+        this.millis = millis;
+    }
+
+    /**
+     * Reads the field for the given no-fly zones from a file if it holds
+     * one worked out for the same zones and cell size, or else works it
+     * out and writes it to the file.
+     *
+     * @param noFlyZones the no-fly zones
+     * @param cellSize   the length of the side of a cell in degrees
+     * @param file       where the field is kept between runs, or null
+     * @return the field
+     */
+    protected static HomeCostField obtain(List<NoFlyZone> noFlyZones, double cellSize, Path file) {
+        long zonesHash = hash(noFlyZones, Constants.APPLETON_LNG, Constants.APPLETON_LAT);
+        if (file != null && Files.exists(file)) {
+            try {
+                HomeCostField field = read(file);
+                if (field.zonesHash == zonesHash && field.cellSize == cellSize) {
+                    return field;
+                }
+                Log.info("Home cost field " + file + " is for other no-fly zones or another cell size, working it out again");
+            } catch (IOException e) {
+                Log.error("Home cost field " + file + " could not be read", e);
+            }
+        }
+        HomeCostField field = build(noFlyZones, cellSize);
+        if (file != null) {
+            try {
+                field.write(file);
+            } catch (IOException e) {
+                Log.error("Home cost field " + file + " could not be written", e);
+            }
+        }
+        return field;
+    }
+
+    /**
+     * Works out the field for the given no-fly zones.
+     *
+     * @param noFlyZones the no-fly zones
+     * @param cellSize   the length of the side of a cell in degrees
+     * @return the field
+     * @throws IllegalArgumentException if the cell size is not positive or
+     *                                  gives too many cells
+     */
+    protected static HomeCostField build(List<NoFlyZone> noFlyZones, double cellSize) {
+        checkCellSize(cellSize);
+        long start = System.nanoTime();
+        int columns = columnsFor(cellSize);
+        int rows = rowsFor(cellSize);
+        short[] moves = new short[columns * rows];
+        Arrays.fill(moves, UNREACHABLE);
+        blockCellsInsideZones(noFlyZones, cellSize, columns, rows, moves);
+        search(cellSize, columns, rows, moves, Constants.APPLETON_LNG, Constants.APPLETON_LAT);
+        return new HomeCostField(cellSize, Constants.APPLETON_LNG, Constants.APPLETON_LAT,
+                hash(noFlyZones, Constants.APPLETON_LNG, Constants.APPLETON_LAT), moves, "worked out",
+                (System.nanoTime() - start) / 1e6);
+    }
+
+    /**
+     * Works out the field towards the given goal on the grid of this field,
+     * with the same cells inside the no-fly zones.
+     *
+     * @param goal the location the moves of the new field lead to
+     * @return the field towards the goal
+     */
+    protected HomeCostField towards(Location goal) {
+        long start = System.nanoTime();
+        short[] goalMoves = new short[moves.length];
+        for (int cell = 0; cell < moves.length; cell++) {
+            goalMoves[cell] = moves[cell] == BLOCKED ? BLOCKED : UNREACHABLE;
+        }
+        search(cellSize, columns, rows, goalMoves, goal.getLongitude(), goal.getLatitude());
+        return new HomeCostField(cellSize, goal.getLongitude(), goal.getLatitude(), zonesHash, goalMoves,
+                "worked out", (System.nanoTime() - start) / 1e6);
+    }
+
+    /**
+     * Checks that a field can be worked out with the given cell size, i.e.
+     * that the size is a positive number and the grid has no more than
+     * HOME_FIELD_MAX_CELLS cells.
+     *
+     * @param cellSize the length of the side of a cell in degrees
+     * @throws IllegalArgumentException if the cell size is not positive or
+     *                                  gives too many cells
+     */
+    protected static void checkCellSize(double cellSize) {
+        if (!(cellSize > 0) || Double.isInfinite(cellSize)) {
+            throw new IllegalArgumentException("The cells of the home cost field need a positive size. Given: " + cellSize);
+        }
+        long cells = (long) Math.ceil((Constants.LONGITUDE_EAST_BOUNDARY - Constants.LONGITUDE_WEST_BOUNDARY) / cellSize)
+                * (long) Math.ceil((Constants.LATITUDE_NORTH_BOUNDARY - Constants.LATITUDE_SOUTH_BOUNDARY) / cellSize);
+        if (cells > Constants.HOME_FIELD_MAX_CELLS) {
+            throw new IllegalArgumentException("Cells of " + cellSize + " degrees would give the home cost field "
+                    + cells + " cells, at most " + Constants.HOME_FIELD_MAX_CELLS + " are allowed");
+        }
+    }
+
+    //Breadth-first search filling in the moves of the cells that are not blocked, going backwards from the goal.
+    private static void search(double cellSize, int columns, int rows, short[] moves, double goalLng, double goalLat) {
+        //The leg ends in the cells with a point closer to the goal than the tolerance.
+        //Every cell is queued at most once, in the order of its moves.
+        int[] queue = new int[moves.length];
+        int queued = 0;
+        for (int row = 0; row < rows; row++) {
+            for (int column = 0; column < columns; column++) {
+                int cell = row * columns + column;
+                if (moves[cell] != BLOCKED
+                        && distanceToGoal(cellSize, column, row, goalLng, goalLat) < Constants.DISTANCE_TOLERANCE) {
+                    moves[cell] = 0;
+                    queue[queued++] = cell;
+                }
+            }
+        }
+
+        //Offsets of the cells with a point within a move of some point of a cell.
+        int reach = (int) Math.ceil(Constants.MOVE_LENGTH / cellSize) + 1;
+        List<int[]> offsets = new ArrayList<>();
+        for (int dRow = -reach; dRow <= reach; dRow++) {
+            for (int dColumn = -reach; dColumn <= reach; dColumn++) {
+                double gapLng = Math.max(Math.abs(dColumn) - 1, 0) * cellSize;
+                double gapLat = Math.max(Math.abs(dRow) - 1, 0) * cellSize;
+                if ((dRow != 0 || dColumn != 0) && Math.sqrt(gapLng * gapLng + gapLat * gapLat) <= Constants.MOVE_LENGTH) {
+                    offsets.add(new int[]{dColumn, dRow});
+                }
+            }
+        }
+
+        for (int head = 0; head < queued; head++) {
+            int cell = queue[head];
+            int column = cell % columns;
+            int row = cell / columns;
+            short next = (short) (moves[cell] + 1);
+            for (int[] offset : offsets) {
+                int c = column + offset[0];
+                int r = row + offset[1];
+                if (c < 0 || c >= columns || r < 0 || r >= rows) continue;
+                int neighbour = r * columns + c;
+                if (moves[neighbour] == UNREACHABLE) {
+                    moves[neighbour] = next;
+                    queue[queued++] = neighbour;
+                }
+            }
+        }
+    }
+
+    private static void blockCellsInsideZones(List<NoFlyZone> noFlyZones, double cellSize, int columns, int rows,
+                                              short[] moves) {
+        for (NoFlyZone zone : noFlyZones) {
+            Polygon polygon = zone.getJtsPolygon();
+            PreparedPolygon prepared = new PreparedPolygon(polygon);
+            Envelope envelope = polygon.getEnvelopeInternal();
+            int firstColumn = Math.max((int) ((envelope.getMinX() - Constants.LONGITUDE_WEST_BOUNDARY) / cellSize), 0);
+            int lastColumn = Math.min((int) ((envelope.getMaxX() - Constants.LONGITUDE_WEST_BOUNDARY) / cellSize), columns - 1);
+            int firstRow = Math.max((int) ((envelope.getMinY() - Constants.LATITUDE_SOUTH_BOUNDARY) / cellSize), 0);
+            int lastRow = Math.min((int) ((envelope.getMaxY() - Constants.LATITUDE_SOUTH_BOUNDARY) / cellSize), rows - 1);
+            for (int row = firstRow; row <= lastRow; row++) {
+                for (int column = firstColumn; column <= lastColumn; column++) {
+                    double west = Constants.LONGITUDE_WEST_BOUNDARY + column * cellSize;
+                    double south = Constants.LATITUDE_SOUTH_BOUNDARY + row * cellSize;
+                    Polygon cell = Utils.geometryFactory.createPolygon(new Coordinate[]{
+                            new Coordinate(west, south), new Coordinate(west + cellSize, south),
+                            new Coordinate(west + cellSize, south + cellSize), new Coordinate(west, south + cellSize),
+                            new Coordinate(west, south)});
+                    if (prepared.covers(cell)) {
+                        moves[row * columns + column] = BLOCKED;
+                    }
+                }
+            }
+        }
+    }
+
+    //Distance from the goal to the closest point of a cell.
+    private static double distanceToGoal(double cellSize, int column, int row, double goalLng, double goalLat) {
+        double west = Constants.LONGITUDE_WEST_BOUNDARY + column * cellSize;
+        double south = Constants.LATITUDE_SOUTH_BOUNDARY + row * cellSize;
+        double dLng = Math.max(Math.max(west - goalLng, goalLng - west - cellSize), 0);
+        double dLat = Math.max(Math.max(south - goalLat, goalLat - south - cellSize), 0);
+        return Math.sqrt(dLng * dLng + dLat * dLat);
+    }
+
+    private static int columnsFor(double cellSize) {
+        return (int) Math.ceil((Constants.LONGITUDE_EAST_BOUNDARY - Constants.LONGITUDE_WEST_BOUNDARY) / cellSize);
+    }
+
+    private static int rowsFor(double cellSize) {
+        return (int) Math.ceil((Constants.LATITUDE_NORTH_BOUNDARY - Constants.LATITUDE_SOUTH_BOUNDARY) / cellSize);
+    }
+
+    //Hash of the vertices of the zones, the goal and the move length and tolerance.
+    private static long hash(List<NoFlyZone> noFlyZones, double goalLng, double goalLat) {
+        long hash = 1125899906842597L;
+        double[] constants = {goalLng, goalLat, Constants.MOVE_LENGTH,
+                Constants.DISTANCE_TOLERANCE, Constants.LONGITUDE_WEST_BOUNDARY, Constants.LATITUDE_SOUTH_BOUNDARY,
+                Constants.LONGITUDE_EAST_BOUNDARY, Constants.LATITUDE_NORTH_BOUNDARY};
+        for (double constant : constants) {
+            hash = 31 * hash + Double.doubleToLongBits(constant);
+        }
+        for (NoFlyZone zone : noFlyZones) {
+            for (Coordinate vertex : zone.getJtsPolygon().getCoordinates()) {
+                hash = 31 * hash + Double.doubleToLongBits(vertex.x);
+                hash = 31 * hash + Double.doubleToLongBits(vertex.y);
+            }
+            hash = 31 * hash + 7;
+        }
+        return hash;
+    }
+
+    /**
+     * Returns a lower bound of the moves needed to get from the given
+     * location to within the tolerance of the goal of the field, the
+     * starting position for a home field, not counting the hovering move
+     * at the end.
+     *
+     * @param longitude longitude of the location
+     * @param latitude  latitude of the location
+     * @return the lower bound of the moves, Short.MAX_VALUE if the goal
+     *         can not be reached
+     */
+    protected int getMovesLowerBound(double longitude, double latitude) {
+        double dLng = longitude - goalLng;
+        double dLat = latitude - goalLat;
+        int straightLine = AStarPlanner.movesLowerBound(Math.sqrt(dLng * dLng + dLat * dLat));
+        int column = (int) Math.floor((longitude - Constants.LONGITUDE_WEST_BOUNDARY) / cellSize);
+        int row = (int) Math.floor((latitude - Constants.LATITUDE_SOUTH_BOUNDARY) / cellSize);
+        if (column < 0 || column >= columns || row < 0 || row >= rows) {
+            return straightLine;
+        }
+        //A location in a blocked cell is on the edge of a zone, as a drone can not be inside one.
+        short cellMoves = moves[row * columns + column];
+        return cellMoves == BLOCKED ? straightLine : Math.max(cellMoves, straightLine);
+    }
+
+    /**
+     * @param location a location in the confinement area
+     * @return a lower bound of the moves needed to get from the location to
+     *         within the tolerance of the starting position, without the hovering move.
+     */
+    protected int getMovesLowerBound(Location location) {
+        return getMovesLowerBound(location.getLongitude(), location.getLatitude());
+    }
+
+    /**
+     * Writes the field to a file, to be read back with obtain.
+     *
+     * @param file where the field is written to
+     * @throws IOException if the file can not be written
+     */
+    protected void write(Path file) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            writeTo(out);
+        }
+    }
+
+    /**
+     * Writes the grid and the moves of its cells, without any header, to
+     * be read back with readFrom. Only home fields are written, as the
+     * goal is not.
+     *
+     * @param out where the field is written to
+     * @throws IOException if the field can not be written
+     */
+    protected void writeTo(DataOutput out) throws IOException {
+        out.writeLong(zonesHash);
+        out.writeDouble(cellSize);
+        out.writeInt(columns);
+        out.writeInt(rows);
+        for (short cellMoves : moves) {
+            out.writeShort(cellMoves);
+        }
+    }
+
+    private static HomeCostField read(Path file) throws IOException {
+        long start = System.nanoTime();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.remaining() < 2 * Integer.BYTES || buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+                throw new IOException("Not a home cost field of version " + VERSION);
+            }
+            return readFrom(buffer, "read from " + file, start);
+        }
+    }
+
+    /**
+     * Reads a home field written with writeTo from the position of the
+     * buffer, leaving the buffer positioned after it.
+     *
+     * @param buffer    the buffer holding the field, big-endian
+     * @param origin    where the field was read from, for the statistics
+     * @param startTime System.nanoTime() when reading started
+     * @return the field
+     * @throws IOException if the buffer does not hold a whole field
+     */
+    protected static HomeCostField readFrom(ByteBuffer buffer, String origin, long startTime) throws IOException {
+        try {
+            long zonesHash = buffer.getLong();
+            double cellSize = buffer.getDouble();
+            int columns = buffer.getInt();
+            int rows = buffer.getInt();
+            try {
+                checkCellSize(cellSize);
+            } catch (IllegalArgumentException e) {
+                throw new IOException(e.getMessage(), e);
+            }
+            if (columns != columnsFor(cellSize) || rows != rowsFor(cellSize)) {
+                throw new IOException("The size of the grid does not match its cells");
+            }
+            short[] moves = new short[columns * rows];
+            buffer.asShortBuffer().get(moves);
+            buffer.position(buffer.position() + moves.length * Short.BYTES);
+            return new HomeCostField(cellSize, Constants.APPLETON_LNG, Constants.APPLETON_LAT, zonesHash, moves, origin,
+                    (System.nanoTime() - startTime) / 1e6);
+        } catch (BufferUnderflowException e) {
+            throw new IOException("The home cost field is cut short", e);
+        }
+    }
+
+    /**
+     * @return the length of the side of a cell in degrees.
+     */
+    protected double getCellSize() { return this.cellSize; }
+
+    /**
+     * @return number of bytes taken by the moves of the cells.
+     */
+    protected long getMemoryFootprint() { return (long) moves.length * Short.BYTES; }
+
+    /**
+     * @return size of the grid, memory footprint and time taken to obtain the field.
+     */
+    protected String getStatistics() {
+        int blocked = 0;
+        int maxMoves = 0;
+        for (short cellMoves : moves) {
+            if (cellMoves == BLOCKED) {
+                blocked++;
+            } else if (cellMoves != UNREACHABLE) {
+                maxMoves = Math.max(maxMoves, cellMoves);
+            }
+        }
+        return "Home cost field: " + columns + " x " + rows + " cells of " + String.format("%.3g", cellSize) + " degrees, "
+                + blocked + " inside no-fly zones, up to " + maxMoves + " moves, "
+                + String.format("%.1f", getMemoryFootprint() / 1024.0) + " KB, "
+                + origin + " in " + String.format("%.1f", millis) + " ms";
+    }
+}
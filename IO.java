@@ -1,7 +1,14 @@
 package uk.ac.ed.inf;
 
-import java.io.FileWriter;
+import java.io.BufferedWriter;
 import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
 
 /**
  * Parses the command line arguments and outputs the geojson file
@@ -10,14 +17,20 @@ public class IO {
     protected static Date date;
     protected static String server_port;
     protected static String database_port;
+    //Optional key=value settings given after the 5 positional arguments.
+    protected static final Map<String, String> options = new HashMap<>();
 
     /**
      * Uses the command line arguments to set up the date, the starting location,
-     * the seed and the port.
+     * the seed and the port. Any arguments after the first 5 are read as
+     * optional key=value settings.
      *
      * @param args the arguments to be parsed
      * @throws ArrayIndexOutOfBoundsException if the given arguments
      * 										  are less than 5
+     * @throws IllegalArgumentException if an optional argument is not
+     *                                  of the form key=value, or the
+     *                                  log level is unknown
      */
     protected static void parseArguments(String[] args) throws ArrayIndexOutOfBoundsException {
         if (args.length < 5) {
@@ -29,28 +42,53 @@ public class IO {
         date = new Date(args[0], args[1], args[2]);
         server_port = args[3];
         database_port = args[4];
+
+        for (int i = 5; i < args.length; i++) {
+            String[] option = args[i].split("=", 2);
+            if (option.length != 2) {
+                throw new IllegalArgumentException("Optional arguments must be given as key=value. Given: " + args[i]);
+            }
+            options.put(option[0], option[1]);
+        }
+        Log.setLevel(getOption("log-level", "info"));
     }
 
     /**
-     * Creates the readings file corresponding to the date given with the command line arguments
-     * and writes to it the json string representing the flightpath of the delivery drone.
+     * Returns the value of an optional key=value command line argument.
      *
-     * @param stringToWrite string which will be written to the
-     * 						readings file
+     * @param key          name of the option
+     * @param defaultValue value to return if the option was not given
+     * @return the value given for the option, or the default value
      */
-    protected static void writeReadingFile(String stringToWrite) {
+    protected static String getOption(String key, String defaultValue) {
+        return options.getOrDefault(key, defaultValue);
+    }
+
+    /**
+     * Creates the readings file corresponding to the date given and
+     * streams the json representing the flightpath of the delivery
+     * drone to it through a buffered writer.
+     *
+     * @param date    date of the flightpath
+     * @param content writes the json to the file
+     */
+    protected static void writeReadingFile(Date date, JsonContent content) {
         String filename = "drone-" + date.getDay() + "-" + date.getMonth()
                 + "-" + date.getYear() + ".geojson";
-        try {
-            FileWriter writer = new FileWriter(filename);
-            writer.append(stringToWrite);
-//	    	System.out.println("File " + filename + " created successfully.");
-            writer.close();
+        try (Writer writer = new BufferedWriter(new OutputStreamWriter(
+                Files.newOutputStream(Path.of(filename)), StandardCharsets.UTF_8), Constants.GEOJSON_BUFFER_SIZE)) {
+            content.writeTo(writer);
         } catch (IOException e) {
-            System.out.println("File could not be created");
-            e.printStackTrace();
+            Log.error("File " + filename + " could not be created", e);
         }
     }
 
+    /**
+     * Writes json to a writer.
+     */
+    protected interface JsonContent {
+        void writeTo(Writer writer) throws IOException;
+    }
+
 
 }
@@ -0,0 +1,216 @@
+package uk.ac.ed.inf;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Remembers the legs planned between two locations, e.g. between shops,
+ * delivery points, landmarks and the starting position, so that planning
+ * the same leg again, for another order or another date, is a lookup.
+ * A leg is stored as the directions of its moves only and the moves are
+ * rebuilt from the start location when it is looked up, which gives
+ * exactly the same positions as planning it again.
+ *
+ * The cache keeps at most a given total number of moves and evicts the
+ * least recently used legs when it is full. Legs planned by different
+ * route planners are kept apart.
+ */
+public class LegCache {
+
+    private final long maxMoves;
+    private long storedMoves = 0;
+    //Legs from the least to the most recently used. The map is kept in
+    // insertion order and a leg is moved to the end when it is used, so
+    // that peeking at a leg does not change the order.
+    private final Map<LegKey, byte[]> legs = new LinkedHashMap<>();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * Class constructor specifying the size of the cache.
+     *
+     * @param maxMoves the maximum total number of moves of the legs kept
+     */
+    protected LegCache(long maxMoves) {
+        this.maxMoves = maxMoves;
+    }
+
+    /**
+     * Returns a route planner that plans legs with the given planner
+     * and caches them.
+     *
+     * @param planner the planner used for legs that are not cached
+     * @return route planner going through the cache
+     */
+    protected RoutePlanner wrap(RoutePlanner planner) {
+        return new RoutePlanner() {
+            @Override
+            public List<Move> planLeg(Location startLocation, Location goalLocation) {
+                return getLeg(planner, startLocation, goalLocation);
+            }
+
+            @Override
+            public int getKnownMoveCount(Location startLocation, Location goalLocation) {
+                return peekMoveCount(planner, startLocation, goalLocation);
+            }
+        };
+    }
+
+    /**
+     * Returns the moves from the start location until the drone is close
+     * to the goal location, planning them with the given planner only if
+     * the leg is not already cached.
+     *
+     * @param planner       the planner used if the leg is not cached
+     * @param startLocation the location the drone starts from
+     * @param goalLocation  the location the drone needs to get close to
+     * @return the moves in the order they are made
+     */
+    protected List<Move> getLeg(RoutePlanner planner, Location startLocation, Location goalLocation) {
+        LegKey key = new LegKey(planner, startLocation, goalLocation);
+        byte[] directions;
+        synchronized (this) {
+            directions = use(key);
+        }
+        if (directions == null) {
+            misses.increment();
+            List<Move> leg = planner.planLeg(startLocation, goalLocation);
+            put(key, leg);
+            return leg;
+        }
+        hits.increment();
+
+        List<Move> leg = new ArrayList<>(directions.length);
+        Location start = startLocation;
+        for (byte direction : directions) {
+            Location end = new Location(start.getLongitude() + Utils.MOVE_LNG[direction],
+                    start.getLatitude() + Utils.MOVE_LAT[direction]);
+            leg.add(new Move(start, end, BuildFlightpath.DUMMY_MOVE_NO, direction * 10));
+            start = end;
+        }
+        return leg;
+    }
+
+    /**
+     * Returns the number of moves from the start location until the drone
+     * is close to the goal location, planning the leg with the given planner
+     * only if it is not already cached.
+     *
+     * @param planner       the planner used if the leg is not cached
+     * @param startLocation the location the drone starts from
+     * @param goalLocation  the location the drone needs to get close to
+     * @return number of moves of the leg, not counting the hovering move
+     */
+    protected int getMoveCount(RoutePlanner planner, Location startLocation, Location goalLocation) {
+        LegKey key = new LegKey(planner, startLocation, goalLocation);
+        synchronized (this) {
+            byte[] directions = use(key);
+            if (directions != null) {
+                hits.increment();
+                return directions.length;
+            }
+        }
+        misses.increment();
+        List<Move> leg = planner.planLeg(startLocation, goalLocation);
+        put(key, leg);
+        return leg.size();
+    }
+
+    /**
+     * Returns the number of moves of a leg only if it is cached, without
+     * planning it, counting a hit or a miss or making it recently used, so
+     * that looking up bounds does not decide which legs are evicted.
+     *
+     * @param planner       the planner the leg was planned with
+     * @param startLocation the location the drone starts from
+     * @param goalLocation  the location the drone needs to get close to
+     * @return number of moves of the leg, not counting the hovering move,
+     *         or -1 if it is not cached
+     */
+    protected synchronized int peekMoveCount(RoutePlanner planner, Location startLocation, Location goalLocation) {
+        byte[] directions = legs.get(new LegKey(planner, startLocation, goalLocation));
+        return directions == null ? -1 : directions.length;
+    }
+
+    /**
+     * @return size, memory use, hits, misses, hit rate and evictions of the cache.
+     */
+    protected synchronized String getStatistics() {
+        long hitCount = hits.sum();
+        long lookups = hitCount + misses.sum();
+        double hitRate = lookups == 0 ? 0 : (double) hitCount / lookups;
+        return "Leg cache: " + legs.size() + " legs, " + storedMoves + " / " + maxMoves + " moves stored, "
+                + hitCount + " hits, " + misses.sum() + " misses, "
+                + String.format("%.1f", hitRate * 100) + "% hit rate, " + evictions.sum() + " evictions";
+    }
+
+    //Returns the directions of a cached leg, making it the most recently used one, or null.
+    private byte[] use(LegKey key) {
+        byte[] directions = legs.remove(key);
+        if (directions != null) {
+            legs.put(key, directions);
+        }
+        return directions;
+    }
+
+    private synchronized void put(LegKey key, List<Move> leg) {
+        if (leg.size() > maxMoves) return;
+        byte[] directions = new byte[leg.size()];
+        for (int i = 0; i < directions.length; i++) {
+            directions[i] = (byte) (leg.get(i).getAngle() / 10);
+        }
+        byte[] replaced = legs.remove(key);
+        legs.put(key, directions);
+        storedMoves += directions.length - (replaced == null ? 0 : replaced.length);
+
+        var eldest = legs.entrySet().iterator();
+        while (storedMoves > maxMoves) {
+            storedMoves -= eldest.next().getValue().length;
+            eldest.remove();
+            evictions.increment();
+        }
+    }
+
+    /**
+     * Identifies a leg by the planner used and the exact coordinates of
+     * its start and goal locations.
+     */
+    private static class LegKey {
+        private final Class<?> planner;
+        private final double startLng;
+        private final double startLat;
+        private final double goalLng;
+        private final double goalLat;
+
+        private LegKey(RoutePlanner planner, Location start, Location goal) {
+            this.planner = planner.getClass();
+            this.startLng = start.getLongitude();
+            this.startLat = start.getLatitude();
+            this.goalLng = goal.getLongitude();
+            this.goalLat = goal.getLatitude();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof LegKey)) return false;
+            LegKey other = (LegKey) o;
+            return planner == other.planner
+                    && Double.compare(startLng, other.startLng) == 0 && Double.compare(startLat, other.startLat) == 0
+                    && Double.compare(goalLng, other.goalLng) == 0 && Double.compare(goalLat, other.goalLat) == 0;
+        }
+
+        @Override
+        public int hashCode() {
+            int hash = planner.hashCode();
+            hash = 31 * hash + Double.hashCode(startLng);
+            hash = 31 * hash + Double.hashCode(startLat);
+            hash = 31 * hash + Double.hashCode(goalLng);
+            return 31 * hash + Double.hashCode(goalLat);
+        }
+    }
+}
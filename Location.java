@@ -4,11 +4,16 @@ import com.mapbox.geojson.Point;
 import org.locationtech.jts.geom.Coordinate;
 
 /**
- * Creates a Location object and includes method to create a JTS Point from a GeoJson point
+ * Creates a Location object and includes method to create a JTS Point from a GeoJson point.
+ * A location only holds its two coordinates: the planners create one for
+ * every move they consider, so the GeoJson point is only built the first
+ * time it is asked for.
  */
-public class Location {
-    private double longitude;
-    private double latitude;
+public final class Location {
+    private final double longitude;
+    private final double latitude;
+    //GeoJson point of the location, built when first needed. Points are
+    // immutable, so two threads building it at once is harmless.
     private Point point;
 
     /**
@@ -20,7 +25,6 @@ public class Location {
     protected Location(double longitude, double latitude) {
         this.longitude = longitude;
         this.latitude = latitude;
-        this.point = Point.fromLngLat(this.longitude, this.latitude);
     }
 
     /**
@@ -30,7 +34,12 @@ public class Location {
      * 		   and longitude.
      */
     protected Point getPoint() {
-        return this.point;
+        Point p = this.point;
+        if (p == null) {
+            p = Point.fromLngLat(this.longitude, this.latitude);
+            this.point = p;
+        }
+        return p;
     }
 
     /**
@@ -50,6 +59,7 @@ public class Location {
     /**
      * Returns a Coordinate object using the class'
      * fields so that jts-core dependency can be used with it.
+     * A new Coordinate is made on every call as they are mutable.
      * @return the coordinate of the point with the specified
      * 		   latitude and longitude.
      */
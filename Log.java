@@ -0,0 +1,177 @@
+package uk.ac.ed.inf;
+
+import java.io.BufferedOutputStream;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Writes the messages of the application to the console. Each message has
+ * a level and only the messages at or above the level set with the optional
+ * log-level=error|warn|info|debug|trace argument are written, info being
+ * the default.
+ *
+ * Messages that are expensive to build, such as the ones written for every
+ * move, are given as a Supplier which is only called if the level is
+ * enabled, so they cost a level check when it is not. Enabled messages are
+ * put in a queue and written by a background thread, so the thread planning
+ * the flightpath never waits for the console. Errors and warnings go to the
+ * standard error stream and everything else to the standard output.
+ */
+public class Log {
+
+    /**
+     * Levels of the messages from the most to the least important.
+     */
+    protected enum Level { ERROR, WARN, INFO, DEBUG, TRACE }
+
+    private static volatile Level level = Level.INFO;
+
+    //Console streams written by the background thread, flushed once per batch of messages.
+    private static final PrintStream out = new PrintStream(new BufferedOutputStream(new FileOutputStream(FileDescriptor.out)));
+    private static final PrintStream err = new PrintStream(new BufferedOutputStream(new FileOutputStream(FileDescriptor.err)));
+
+    private static final BlockingQueue<Entry> queue = new LinkedBlockingQueue<>(Constants.LOG_QUEUE_CAPACITY);
+    //Number of messages queued and written so far, used to wait
+    // until everything queued has been written.
+    private static final AtomicLong queued = new AtomicLong();
+    private static long written = 0;
+    private static final Object writtenLock = new Object();
+
+    static {
+        Thread appender = new Thread(Log::append, "log-appender");
+        appender.setDaemon(true);
+        appender.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(Log::flush));
+    }
+
+    /**
+     * Sets the level of the messages to write.
+     *
+     * @param name name of the level, in any case
+     * @throws IllegalArgumentException if there is no level with that name
+     */
+    protected static void setLevel(String name) {
+        try {
+            level = Level.valueOf(name.toUpperCase());
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Unknown log level: " + name
+                    + ". Must be one of error, warn, info, debug or trace");
+        }
+    }
+
+    /**
+     * @param messageLevel level of a message
+     * @return true if messages of that level are written.
+     */
+    protected static boolean isEnabled(Level messageLevel) {
+        return messageLevel.compareTo(level) <= 0;
+    }
+
+    protected static void error(String message) { log(Level.ERROR, message); }
+
+    /**
+     * Writes an error message followed by the stack trace of the exception
+     * that caused it.
+     *
+     * @param message   the message
+     * @param exception the exception that caused the error
+     */
+    protected static void error(String message, Throwable exception) {
+        StringWriter stackTrace = new StringWriter();
+        exception.printStackTrace(new PrintWriter(stackTrace));
+        log(Level.ERROR, message + System.lineSeparator() + stackTrace);
+    }
+
+    protected static void warn(String message) { log(Level.WARN, message); }
+
+    protected static void info(String message) { log(Level.INFO, message); }
+
+    protected static void debug(String message) { log(Level.DEBUG, message); }
+
+    protected static void debug(Supplier<String> message) {
+        if (isEnabled(Level.DEBUG)) log(Level.DEBUG, message.get());
+    }
+
+    protected static void trace(String message) { log(Level.TRACE, message); }
+
+    protected static void trace(Supplier<String> message) {
+        if (isEnabled(Level.TRACE)) log(Level.TRACE, message.get());
+    }
+
+    /**
+     * Waits until every message queued so far has been written.
+     */
+    protected static void flush() {
+        long target = queued.get();
+        synchronized (writtenLock) {
+            while (written < target) {
+                try {
+                    writtenLock.wait(100);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    private static void log(Level messageLevel, String message) {
+        if (!isEnabled(messageLevel)) return;
+        String line = String.format("%-5s [%s] %s", messageLevel, Thread.currentThread().getName(), message);
+        queued.incrementAndGet();
+        try {
+            queue.put(new Entry(messageLevel, line));
+        } catch (InterruptedException e) {
+            queued.decrementAndGet();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Writes the queued messages, as many at a time as there are queued,
+     * flushing the console streams once per batch.
+     */
+    private static void append() {
+        List<Entry> batch = new ArrayList<>();
+        while (true) {
+            try {
+                batch.add(queue.take());
+            } catch (InterruptedException e) {
+                return;
+            }
+            queue.drainTo(batch);
+            for (Entry entry : batch) {
+                (entry.level.compareTo(Level.WARN) <= 0 ? err : out).println(entry.line);
+            }
+            out.flush();
+            err.flush();
+            synchronized (writtenLock) {
+                written += batch.size();
+                writtenLock.notifyAll();
+            }
+            batch.clear();
+        }
+    }
+
+    /**
+     * A message waiting to be written, with its level.
+     */
+    private static class Entry {
+        private final Level level;
+        private final String line;
+
+        private Entry(Level level, String line) {
+            this.level = level;
+            this.line = line;
+        }
+    }
+}
@@ -0,0 +1,286 @@
+package uk.ac.ed.inf;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.zip.CRC32;
+
+import com.mapbox.geojson.Feature;
+import com.mapbox.geojson.Point;
+import com.mapbox.geojson.Polygon;
+
+/**
+ * The map data compiled into one binary file, so that short runs start
+ * without parsing the geojson and json files, resolving the What3Words
+ * addresses of the shops or working out the moves back to the starting
+ * position. The file is written with the optional compile-map=<file>
+ * argument and used with map-artifact=<file>.
+ *
+ * The file starts with a header: a magic number, the version of the
+ * format, a SHA-256 digest of the menus, no-fly zones and landmarks files
+ * it was compiled from, and the length and CRC32 of the rest of the file.
+ * The rest holds the rings of vertices of the no-fly zones, the outer one
+ * followed by any holes, the landmarks, the shops with the coordinates of
+ * their What3Words address and their menus, and the home cost field of the
+ * zones, all big-endian. The file is memory
+ * mapped when it is read. Its CRC32 is always checked, and unless the
+ * optional map-artifact-check=false argument is given the digest is
+ * checked against the files the web server serves now, so a map compiled
+ * before the data changed is not used.
+ *
+ * The spatial index of the zones and the index of the menus are built
+ * again from the zones and menus when the file is read, as they hold
+ * prepared geometries and hash maps that take far less time to build
+ * than to read the files they come from.
+ */
+public class MapArtifact {
+
+    private static final int MAGIC = 0x444D4150;
+    private static final int VERSION = 2;
+    private static final int DIGEST_LENGTH = 32;
+    private static final int HEADER_LENGTH = 2 * Integer.BYTES + DIGEST_LENGTH + Integer.BYTES + Long.BYTES;
+    //Files of the web server the map is compiled from, in the order they are digested.
+    private static final List<String> SOURCE_FILES = List.of("/menus/menus.json",
+            "/buildings/no-fly-zones.geojson", "/buildings/landmarks.geojson");
+
+    private MapArtifact() {}
+
+    /**
+     * Reads the map data from the given source, resolves the addresses of
+     * the shops, works out the home cost field with the cell size given by
+     * the optional home-field-resolution argument and writes it all to the
+     * given file, replacing it at once if it exists.
+     *
+     * @param source where the map data is obtained from
+     * @param file   the file to write the compiled map to
+     * @throws IOException if the file can not be written
+     */
+    protected static void compile(MapDataSource source, Path file) throws IOException {
+        long start = System.nanoTime();
+        Map<String, String> contents = readSourceFiles(source);
+        MapData map = parseSourceFiles(source, contents);
+
+        ByteArrayOutputStream payloadBytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(payloadBytes)) {
+            out.writeInt(map.getNoFlyZones().size());
+            for (NoFlyZone zone : map.getNoFlyZones()) {
+                List<List<Point>> rings = zone.getGeojsonPolygon().coordinates();
+                out.writeInt(rings.size());
+                for (List<Point> vertices : rings) {
+                    out.writeInt(vertices.size());
+                    for (Point vertex : vertices) {
+                        out.writeDouble(vertex.longitude());
+                        out.writeDouble(vertex.latitude());
+                    }
+                }
+            }
+            out.writeInt(map.getLandmarks().size());
+            for (Landmark landmark : map.getLandmarks()) {
+                out.writeDouble(landmark.getLocation().getLongitude());
+                out.writeDouble(landmark.getLocation().getLatitude());
+            }
+            out.writeInt(map.getShops().size());
+            for (Shop shop : map.getShops()) {
+                Location location = shop.getShopLocation();
+                writeString(out, shop.name);
+                writeString(out, shop.location);
+                out.writeDouble(location.getLongitude());
+                out.writeDouble(location.getLatitude());
+                List<Shop.ItemAndCost> menu = shop.menu == null ? List.of() : shop.menu;
+                out.writeInt(menu.size());
+                for (Shop.ItemAndCost itemAndCost : menu) {
+                    writeString(out, itemAndCost.item);
+                    out.writeInt(itemAndCost.pence);
+                }
+            }
+            map.getHomeCostField().writeTo(out);
+        }
+        byte[] payload = payloadBytes.toByteArray();
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+
+        Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(Files.newOutputStream(temporary))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.write(digest(contents));
+            out.writeInt(payload.length);
+            out.writeLong(crc.getValue());
+            out.write(payload);
+        }
+        Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        Log.info("Map compiled to " + file + ": " + map.getNoFlyZones().size() + " no-fly zones, "
+                + map.getLandmarks().size() + " landmarks, " + map.getShops().size() + " shops, "
+                + (HEADER_LENGTH + payload.length) + " bytes in "
+                + String.format("%.1f", (System.nanoTime() - start) / 1e6) + " ms");
+    }
+
+    /**
+     * Reads the map data from a compiled map, memory mapping the file. The
+     * shop addresses it holds are put in the What3Words cache. If the files
+     * of the source have changed since the map was compiled, a warning is
+     * logged and the map data is parsed from the files just read to check
+     * the digest, so they are not fetched again.
+     *
+     * @param file        the compiled map
+     * @param source      where the map data is obtained from, used to check
+     *                    the compiled map is up to date
+     * @param checkSource true to check the digest of the files of the source
+     *                    against the one the map was compiled from
+     * @return the map data
+     * @throws IOException if the file can not be read, is of another version
+     *                     or is corrupt
+     */
+    protected static MapData load(Path file, MapDataSource source, boolean checkSource) throws IOException {
+        long start = System.nanoTime();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.remaining() < HEADER_LENGTH || buffer.getInt() != MAGIC) {
+                throw new IOException(file + " is not a compiled map");
+            }
+            int version = buffer.getInt();
+            if (version != VERSION) {
+                throw new IOException(file + " is a compiled map of version " + version + ", expected " + VERSION);
+            }
+            byte[] compiledDigest = new byte[DIGEST_LENGTH];
+            buffer.get(compiledDigest);
+            int payloadLength = buffer.getInt();
+            long payloadCrc = buffer.getLong();
+            if (payloadLength != buffer.remaining()) {
+                throw new IOException(file + " should hold " + payloadLength + " bytes of map data, found "
+                        + buffer.remaining());
+            }
+            CRC32 crc = new CRC32();
+            crc.update(buffer.duplicate());
+            if (crc.getValue() != payloadCrc) {
+                throw new IOException(file + " is corrupt: its checksum does not match");
+            }
+            if (checkSource) {
+                Map<String, String> contents = readSourceFiles(source);
+                if (!Arrays.equals(compiledDigest, digest(contents))) {
+                    Log.warn("Compiled map " + file + " does not match the map data of the web server any more,"
+                            + " compile it again with compile-map");
+                    return parseSourceFiles(source, contents);
+                }
+            }
+
+            MapData map = readPayload(buffer, source, file, start);
+            Log.info("Map read from " + file + ": " + map.getNoFlyZones().size() + " no-fly zones, "
+                    + map.getLandmarks().size() + " landmarks, " + map.getShops().size() + " shops, "
+                    + (HEADER_LENGTH + payloadLength) + " bytes" + (checkSource ? ", checked against the source" : "")
+                    + " in " + String.format("%.1f", (System.nanoTime() - start) / 1e6) + " ms");
+            return map;
+        } catch (BufferUnderflowException e) {
+            throw new IOException(file + " is cut short", e);
+        }
+    }
+
+    private static MapData readPayload(ByteBuffer buffer, MapDataSource source, Path file, long start)
+            throws IOException {
+        int zoneCount = buffer.getInt();
+        List<NoFlyZone> noFlyZones = new ArrayList<>(zoneCount);
+        for (int zone = 0; zone < zoneCount; zone++) {
+            int ringCount = buffer.getInt();
+            List<List<Point>> rings = new ArrayList<>(ringCount);
+            for (int ring = 0; ring < ringCount; ring++) {
+                int vertexCount = buffer.getInt();
+                List<Point> vertices = new ArrayList<>(vertexCount);
+                for (int vertex = 0; vertex < vertexCount; vertex++) {
+                    vertices.add(Point.fromLngLat(buffer.getDouble(), buffer.getDouble()));
+                }
+                rings.add(vertices);
+            }
+            noFlyZones.add(new NoFlyZone(Feature.fromGeometry(Polygon.fromLngLats(rings))));
+        }
+        int landmarkCount = buffer.getInt();
+        List<Landmark> landmarks = new ArrayList<>(landmarkCount);
+        for (int landmark = 0; landmark < landmarkCount; landmark++) {
+            landmarks.add(new Landmark(Feature.fromGeometry(Point.fromLngLat(buffer.getDouble(), buffer.getDouble()))));
+        }
+        int shopCount = buffer.getInt();
+        List<Shop> shops = new ArrayList<>(shopCount);
+        for (int i = 0; i < shopCount; i++) {
+            Shop shop = new Shop();
+            shop.name = readString(buffer);
+            shop.location = readString(buffer);
+            WordsAddressCache.put(shop.location, new Location(buffer.getDouble(), buffer.getDouble()));
+            int menuSize = buffer.getInt();
+            shop.menu = new ArrayList<>(menuSize);
+            for (int item = 0; item < menuSize; item++) {
+                Shop.ItemAndCost itemAndCost = new Shop.ItemAndCost();
+                itemAndCost.item = readString(buffer);
+                itemAndCost.pence = buffer.getInt();
+                shop.menu.add(itemAndCost);
+            }
+            shops.add(shop);
+        }
+        HomeCostField homeCostField = HomeCostField.readFrom(buffer, "read from " + file, start);
+        Log.info(homeCostField.getStatistics());
+        return new MapData(source, noFlyZones, landmarks, shops, homeCostField);
+    }
+
+    //Reads the files the map is compiled from, all at the same time.
+    private static Map<String, String> readSourceFiles(MapDataSource source) {
+        Map<String, CompletableFuture<String>> pending = new HashMap<>();
+        for (String path : SOURCE_FILES) {
+            pending.put(path, source.readAsync(path));
+        }
+        Map<String, String> contents = new HashMap<>();
+        for (String path : SOURCE_FILES) {
+            contents.put(path, pending.get(path).join());
+        }
+        return contents;
+    }
+
+    //Map data parsed from the files read from the source, resolving the addresses of the shops through the source.
+    private static MapData parseSourceFiles(MapDataSource source, Map<String, String> contents) {
+        MapDataSource files = path -> contents.getOrDefault(path, "");
+        return new MapData(source, files.getNoFlyZones(), files.getLandmarks(), files.getShops());
+    }
+
+    private static byte[] digest(Map<String, String> contents) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            for (String path : SOURCE_FILES) {
+                byte[] bytes = contents.get(path).getBytes(StandardCharsets.UTF_8);
+                digest.update(ByteBuffer.allocate(Integer.BYTES).putInt(bytes.length).array());
+                digest.update(bytes);
+            }
+            return digest.digest();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(ByteBuffer buffer) throws IOException {
+        int length = buffer.getInt();
+        if (length < 0 || length > buffer.remaining()) {
+            throw new IOException("A string of " + length + " bytes does not fit in the compiled map");
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
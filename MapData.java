@@ -0,0 +1,176 @@
+package uk.ac.ed.inf;
+
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Holds the data that does not depend on the date being planned, i.e. the
+ * no-fly zones, the landmarks and the shops obtained from the web server,
+ * together with the spatial index of the zones, the catalogue of the menus
+ * of the shops, the cache of planned legs and the lower bound of the moves
+ * back to the starting position, which is only worked out when first used.
+ * It is loaded once and shared, read-only, by every flightpath planned in
+ * the same process.
+ */
+public class MapData {
+
+    private final MapDataSource source;
+    private final List<NoFlyZone> noFlyZones;
+    private final NoFlyZoneIndex noFlyZoneIndex;
+    private final List<Landmark> landmarks;
+    private final List<Shop> shops;
+    private final MenuCatalogue menuCatalogue;
+    private final LegCache legCache = new LegCache(Constants.LEG_CACHE_MAX_MOVES);
+    private HomeCostField homeCostField;
+    private HomeCostField goalFieldGrid;
+
+    /**
+     * Class constructor getting the map data from the web server
+     * or a local snapshot of its data.
+     *
+     * @param source where to get the data from
+     */
+    protected MapData(MapDataSource source) {
+        this(source, source.getNoFlyZones(), source.getLandmarks(), source.getShops());
+    }
+
+    /**
+     * Class constructor specifying the map data directly, e.g. to plan
+     * flightpaths over a synthetic map.
+     *
+     * @param source     where the data was obtained from, or null
+     * @param noFlyZones the no-fly zones
+     * @param landmarks  the landmarks
+     * @param shops      the shops
+     */
+    protected MapData(MapDataSource source, List<NoFlyZone> noFlyZones, List<Landmark> landmarks, List<Shop> shops) {
+        this(source, noFlyZones, landmarks, shops, null);
+    }
+
+    /**
+     * Class constructor specifying the map data directly together with the
+     * moves back to the starting position already worked out for its no-fly
+     * zones, e.g. when it is read from a compiled map.
+     *
+     * @param source        where the data was obtained from, or null
+     * @param noFlyZones    the no-fly zones
+     * @param landmarks     the landmarks
+     * @param shops         the shops
+     * @param homeCostField the field of the moves back to the starting
+     *                      position for these zones, or null to work it out when needed
+     */
+    protected MapData(MapDataSource source, List<NoFlyZone> noFlyZones, List<Landmark> landmarks, List<Shop> shops,
+                      HomeCostField homeCostField) {
+        this.source = source;
+        this.homeCostField = homeCostField;
+        this.noFlyZones = Collections.unmodifiableList(noFlyZones);
+        this.noFlyZoneIndex = new NoFlyZoneIndex(this.noFlyZones, Constants.ZONE_INDEX_CELL_SIZE);
+        this.landmarks = Collections.unmodifiableList(landmarks);
+        this.shops = Collections.unmodifiableList(shops);
+        this.menuCatalogue = new MenuCatalogue(this.shops);
+    }
+
+    /**
+     * Returns a new route planner of the kind selected with the optional
+     * planner argument. Route planners keep state while planning, so every
+     * flightpath needs its own, but they all share the cache of planned legs.
+     * With the optional astar-heuristic=field argument the A* planner bounds
+     * the moves left with a field of the moves towards its goal rather than
+     * with the straight-line distance, which does not account for the no-fly
+     * zones.
+     *
+     * @return route planner going through the cache of planned legs
+     */
+    protected RoutePlanner createPlanner() {
+        RoutePlanner engine;
+        if ("astar".equals(IO.getOption("planner", "greedy"))) {
+            engine = new AStarPlanner(noFlyZoneIndex, Constants.ASTAR_RESOLUTION, Constants.ASTAR_MAX_EXPANSIONS,
+                    "field".equals(IO.getOption("astar-heuristic", "distance")) ? getGoalFieldGrid() : null);
+        } else {
+            engine = new GreedyPlanner(noFlyZoneIndex, landmarks);
+        }
+        return legCache.wrap(engine);
+    }
+
+    /**
+     * @return where the data was obtained from.
+     */
+    protected MapDataSource getSource() { return this.source; }
+
+    /**
+     * @return list of the no-fly zones.
+     */
+    protected List<NoFlyZone> getNoFlyZones() { return this.noFlyZones; }
+
+    /**
+     * @return spatial index of the no-fly zones.
+     */
+    protected NoFlyZoneIndex getNoFlyZoneIndex() { return this.noFlyZoneIndex; }
+
+    /**
+     * @return index of the menus of the shops.
+     */
+    protected MenuCatalogue getMenuCatalogue() { return this.menuCatalogue; }
+
+    /**
+     * Returns the lower bound of the moves back to the starting position,
+     * working it out the first time it is asked for with the cell size
+     * given by the optional home-field-resolution argument. With the
+     * optional home-field-file argument the field is read from that file
+     * if it was worked out for the same no-fly zones and cell size, and
+     * written to it otherwise. A field given with the map data is used if
+     * it has the same cell size.
+     *
+     * @return the field of the moves back to the starting position
+     * @throws IllegalArgumentException if the cell size is not a positive
+     *                                  number or gives the field more than
+     *                                  HOME_FIELD_MAX_CELLS cells
+     */
+    protected synchronized HomeCostField getHomeCostField() {
+        double cellSize;
+        try {
+            cellSize = Double.parseDouble(IO.getOption("home-field-resolution",
+                    String.valueOf(Constants.HOME_FIELD_RESOLUTION)));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("home-field-resolution needs a number of degrees", e);
+        }
+        HomeCostField.checkCellSize(cellSize);
+        if (homeCostField == null || homeCostField.getCellSize() != cellSize) {
+            String file = IO.getOption("home-field-file", null);
+            homeCostField = HomeCostField.obtain(noFlyZones, cellSize, file == null ? null : Path.of(file));
+            Log.info(homeCostField.getStatistics());
+        }
+        return homeCostField;
+    }
+
+    /**
+     * Returns the field whose grid, and cells inside the no-fly zones, the
+     * A* planners work out the fields towards their goals on, working it
+     * out the first time it is asked for.
+     *
+     * @return the field of the moves back to the starting position on the
+     *         grid of the fields towards the goals
+     */
+    protected synchronized HomeCostField getGoalFieldGrid() {
+        if (goalFieldGrid == null) {
+            goalFieldGrid = HomeCostField.build(noFlyZones, Constants.ASTAR_GOAL_FIELD_RESOLUTION);
+        }
+        return goalFieldGrid;
+    }
+
+    /**
+     * @return list of the landmarks.
+     */
+    protected List<Landmark> getLandmarks() { return this.landmarks; }
+
+    /**
+     * @return list of all the shops.
+     */
+    protected List<Shop> getShops() { return this.shops; }
+
+    /**
+     * @return cache of the legs planned so far.
+     */
+    protected LegCache getLegCache() { return this.legCache; }
+}
@@ -0,0 +1,117 @@
+package uk.ac.ed.inf;
+
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
+import com.mapbox.geojson.Feature;
+import com.mapbox.geojson.FeatureCollection;
+
+/**
+ * Where the menus, no-fly zones, landmarks and What3Words details are
+ * obtained from. Every source lays the files out the way the web server
+ * does, e.g. /menus/menus.json, so only reading a file differs between
+ * them and the files are parsed here.
+ */
+public interface MapDataSource {
+
+    /**
+     * Returns the contents of the file at the given path.
+     *
+     * @param path path of the file, such as /menus/menus.json
+     * @return contents of the file, or an empty string if it could not be read
+     */
+    String read(String path);
+
+    /**
+     * Returns the contents of the file at the given path without waiting
+     * for them. Sources that can read several files at the same time
+     * override this, the default reads the file straight away.
+     *
+     * @param path path of the file, such as /menus/menus.json
+     * @return future contents of the file, or an empty string if it could not be read
+     */
+    default CompletableFuture<String> readAsync(String path) {
+        return CompletableFuture.completedFuture(read(path));
+    }
+
+    /**
+     * Returns a list of NoFlyZone members representing
+     * each of the no fly zones.
+     *
+     * @return list of no fly zones as NoFlyZone objects
+     */
+    default List<NoFlyZone> getNoFlyZones() {
+        String source = read("/buildings/no-fly-zones.geojson");
+        FeatureCollection fc = FeatureCollection.fromJson(source);
+        List<Feature> features = fc.features();
+        List<NoFlyZone> noFlyZones = new ArrayList<>();
+        assert features != null;
+        for (Feature feature : features) {
+            noFlyZones.add(new NoFlyZone(feature));
+        }
+        return noFlyZones;
+    }
+
+    /**
+     * Returns a list of the landmarks around the campus
+     * represented by Landmark objects.
+     *
+     * @return a list of landmarks as Landmark objects.
+     */
+    default List<Landmark> getLandmarks() {
+        String source = read("/buildings/landmarks.geojson");
+        FeatureCollection fc = FeatureCollection.fromJson(source);
+        List<Feature> features = fc.features();
+        List<Landmark> landmarks = new ArrayList<>();
+        assert features != null;
+        for (Feature feature : features) {
+            landmarks.add(new Landmark(feature));
+        }
+        return landmarks;
+    }
+
+    /**
+     * Returns a list of the shops involved in the delivery scheme
+     * obtained from the menus directory.
+     *
+     * @return a list of the shops involved in the delivery scheme
+     *         as Shop objects
+     */
+    default List<Shop> getShops() {
+        String source = read("/menus/menus.json");
+        Type listType = new TypeToken<ArrayList<Shop>>() {}.getType();
+        return new Gson().fromJson(source, listType);
+    }
+
+    /**
+     * Returns an object of the WordsAddress class representing
+     * the address of the What3Words string given as argument after
+     * deserialising it.
+     *
+     * @param words What3Words address
+     * @return WordsAddress object corresponding to the What3Words address
+     */
+    default WordsAddress getWordsAddress(String words) {
+        return new Gson().fromJson(read(getWordsPath(words)), WordsAddress.class);
+    }
+
+    /**
+     * Returns the details of a What3Words address without waiting for them.
+     *
+     * @param words What3Words address
+     * @return future WordsAddress object corresponding to the What3Words address
+     */
+    default CompletableFuture<WordsAddress> getWordsAddressAsync(String words) {
+        return readAsync(getWordsPath(words)).thenApply(source -> new Gson().fromJson(source, WordsAddress.class));
+    }
+
+    private static String getWordsPath(String words) {
+        String[] splittedWords = words.split("\\.");
+        return "/words/" + splittedWords[0] + "/" + splittedWords[1]
+                + "/" + splittedWords[2] + "/" + "details.json";
+    }
+}
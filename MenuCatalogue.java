@@ -0,0 +1,124 @@
+package uk.ac.ed.inf;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Index of the menus of all the shops, built once from the shops obtained
+ * from the web server. Each shop is given a small integer id, its position
+ * in the list of shops, and each item name is mapped to the id of the shop
+ * selling it and its price, so the shops and cost of an order take one
+ * lookup per item instead of a search through every menu.
+ *
+ * Items that are on no menu are reported instead of being ignored. If an
+ * item is on the menu of more than one shop, the first shop is used.
+ */
+public class MenuCatalogue {
+
+    private final List<Shop> shops;
+    private final Map<String, MenuItem> items = new HashMap<>();
+
+    /**
+     * Class constructor indexing the menus of the given shops.
+     *
+     * @param shops all the shops a customer can order from
+     */
+    protected MenuCatalogue(List<Shop> shops) {
+        this.shops = List.copyOf(shops);
+        for (int id = 0; id < this.shops.size(); id++) {
+            Shop shop = this.shops.get(id);
+            if (shop.menu == null) continue;
+            for (Shop.ItemAndCost itemAndCost : shop.menu) {
+                MenuItem previous = items.putIfAbsent(itemAndCost.item, new MenuItem(id, itemAndCost.pence));
+                if (previous != null && previous.shopId != id) {
+                    Log.warn("Item " + itemAndCost.item + " is sold by " + this.shops.get(previous.shopId).name
+                            + " and " + shop.name + ", using " + this.shops.get(previous.shopId).name);
+                }
+            }
+        }
+    }
+
+    /**
+     * @param item name of an item
+     * @return the shop id and price of the item, or null if no shop sells it.
+     */
+    protected MenuItem lookup(String item) { return items.get(item); }
+
+    /**
+     * @param shopId id of a shop
+     * @return the shop with that id.
+     */
+    protected Shop getShop(int shopId) { return shops.get(shopId); }
+
+    /**
+     * @return list of the shops indexed by their id.
+     */
+    protected List<Shop> getShops() { return this.shops; }
+
+    /**
+     * Looks up each of the given items once and returns the shops that
+     * sell them, in the order the items are first found, together with
+     * their cost including the base cost for the delivery. The items that
+     * no shop sells are left out of the cost and returned for the caller
+     * to report.
+     *
+     * @param items items that need to be delivered in an order
+     * @return the shops, cost and unknown items of the order
+     */
+    protected ShopsAndCost getShopsAndCost(List<String> items) {
+        List<Shop> shopsInOrder = new ArrayList<>(2);
+        List<String> unknownItems = new ArrayList<>(0);
+        int cost = Constants.DELIVERY_COST;
+        for (String item : items) {
+            MenuItem menuItem = lookup(item);
+            if (menuItem == null) {
+                unknownItems.add(item);
+                continue;
+            }
+            Shop shop = shops.get(menuItem.shopId);
+            if (!shopsInOrder.contains(shop)) {
+                shopsInOrder.add(shop);
+            }
+            cost += menuItem.pence;
+        }
+        return new ShopsAndCost(shopsInOrder, cost, unknownItems);
+    }
+
+    /**
+     * @return number of items and shops in the catalogue.
+     */
+    protected String getStatistics() {
+        return "Menu catalogue: " + items.size() + " items from " + shops.size() + " shops";
+    }
+
+    /**
+     * The shops selling the items of an order, their cost in pence
+     * including the delivery and the items no shop sells.
+     */
+    protected static final class ShopsAndCost {
+        protected final List<Shop> shops;
+        protected final int cost;
+        protected final List<String> unknownItems;
+
+        private ShopsAndCost(List<Shop> shops, int cost, List<String> unknownItems) {
+            this.shops = shops;
+            this.cost = cost;
+            this.unknownItems = unknownItems;
+        }
+    }
+
+    /**
+     * An item on the menu of a shop: the id of the shop and the price.
+     */
+    protected static final class MenuItem {
+        protected final int shopId;
+        protected final int pence;
+
+        private MenuItem(int shopId, int pence) {
+            this.shopId = shopId;
+            this.pence = pence;
+        }
+    }
+}
@@ -0,0 +1,168 @@
+package uk.ac.ed.inf;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.LineString;
+import org.locationtech.jts.geom.Polygon;
+import org.locationtech.jts.geom.prep.PreparedPolygon;
+
+/**
+ * Spatial index of the no-fly zones, built once at set up, used to check
+ * quickly whether a move crosses any of them. The confinement area is
+ * divided into a grid of square cells and every cell lists the zones whose
+ * bounding box overlaps it, so a move is only tested against the zones near
+ * it. A zone is first rejected with a bounding box test and only tested
+ * exactly, with a prepared polygon, if the bounding boxes overlap.
+ */
+public class NoFlyZoneIndex {
+
+    private final double cellSize;
+    private final int columns;
+    private final int rows;
+    //Ids of the zones whose bounding box overlaps each cell, indexed by row * columns + column.
+    private final int[][] cellZones;
+
+    //Bounding box of each zone.
+    private final double[] zoneMinLng;
+    private final double[] zoneMaxLng;
+    private final double[] zoneMinLat;
+    private final double[] zoneMaxLat;
+    //First column and row of the cells each zone overlaps.
+    private final int[] zoneFirstColumn;
+    private final int[] zoneFirstRow;
+    private final PreparedPolygon[] preparedZones;
+
+    private final LongAdder queries = new LongAdder();
+    private final LongAdder candidateZones = new LongAdder();
+    private final LongAdder rejectedZones = new LongAdder();
+    private final LongAdder intersections = new LongAdder();
+
+    /**
+     * Class constructor building the index of the given no-fly zones.
+     *
+     * @param noFlyZones the no-fly zones to index
+     * @param cellSize   the length of the side of a grid cell in degrees
+     */
+    protected NoFlyZoneIndex(List<NoFlyZone> noFlyZones, double cellSize) {
+        this.cellSize = cellSize;
+        this.columns = (int) Math.ceil((Constants.LONGITUDE_EAST_BOUNDARY - Constants.LONGITUDE_WEST_BOUNDARY) / cellSize);
+        this.rows = (int) Math.ceil((Constants.LATITUDE_NORTH_BOUNDARY - Constants.LATITUDE_SOUTH_BOUNDARY) / cellSize);
+
+        int zones = noFlyZones.size();
+        zoneMinLng = new double[zones];
+        zoneMaxLng = new double[zones];
+        zoneMinLat = new double[zones];
+        zoneMaxLat = new double[zones];
+        zoneFirstColumn = new int[zones];
+        zoneFirstRow = new int[zones];
+        preparedZones = new PreparedPolygon[zones];
+
+        List<List<Integer>> zonesInCell = new ArrayList<>();
+        for (int cell = 0; cell < columns * rows; cell++) {
+            zonesInCell.add(new ArrayList<>());
+        }
+        for (int zone = 0; zone < zones; zone++) {
+            Polygon polygon = noFlyZones.get(zone).getJtsPolygon();
+            zoneMinLng[zone] = Double.MAX_VALUE;
+            zoneMaxLng[zone] = -Double.MAX_VALUE;
+            zoneMinLat[zone] = Double.MAX_VALUE;
+            zoneMaxLat[zone] = -Double.MAX_VALUE;
+            for (Coordinate coordinate : polygon.getCoordinates()) {
+                zoneMinLng[zone] = Math.min(zoneMinLng[zone], coordinate.x);
+                zoneMaxLng[zone] = Math.max(zoneMaxLng[zone], coordinate.x);
+                zoneMinLat[zone] = Math.min(zoneMinLat[zone], coordinate.y);
+                zoneMaxLat[zone] = Math.max(zoneMaxLat[zone], coordinate.y);
+            }
+            preparedZones[zone] = new PreparedPolygon(polygon);
+
+            zoneFirstColumn[zone] = column(zoneMinLng[zone]);
+            zoneFirstRow[zone] = row(zoneMinLat[zone]);
+            for (int row = zoneFirstRow[zone]; row <= row(zoneMaxLat[zone]); row++) {
+                for (int column = zoneFirstColumn[zone]; column <= column(zoneMaxLng[zone]); column++) {
+                    zonesInCell.get(row * columns + column).add(zone);
+                }
+            }
+        }
+
+        cellZones = new int[columns * rows][];
+        for (int cell = 0; cell < cellZones.length; cell++) {
+            cellZones[cell] = zonesInCell.get(cell).stream().mapToInt(Integer::intValue).toArray();
+        }
+    }
+
+    /**
+     * Checks if the line starting at (startLng, startLat) and finishing
+     * at (endLng, endLat) intersects with any of the no-fly zones.
+     *
+     * @param startLng longitude of the start of the line
+     * @param startLat latitude of the start of the line
+     * @param endLng   longitude of the end of the line
+     * @param endLat   latitude of the end of the line
+     * @return true if it intersects, false otherwise
+     */
+    protected boolean intersects(double startLng, double startLat, double endLng, double endLat) {
+        queries.increment();
+        double minLng = Math.min(startLng, endLng);
+        double maxLng = Math.max(startLng, endLng);
+        double minLat = Math.min(startLat, endLat);
+        double maxLat = Math.max(startLat, endLat);
+        int firstColumn = column(minLng);
+        int lastColumn = column(maxLng);
+        int firstRow = row(minLat);
+        int lastRow = row(maxLat);
+
+        LineString line = null;
+        for (int row = firstRow; row <= lastRow; row++) {
+            for (int column = firstColumn; column <= lastColumn; column++) {
+                for (int zone : cellZones[row * columns + column]) {
+                    //A zone overlapping several of the cells is only checked in the first one.
+                    if (column != Math.max(firstColumn, zoneFirstColumn[zone])
+                            || row != Math.max(firstRow, zoneFirstRow[zone])) {
+                        continue;
+                    }
+                    candidateZones.increment();
+                    if (maxLng < zoneMinLng[zone] || minLng > zoneMaxLng[zone]
+                            || maxLat < zoneMinLat[zone] || minLat > zoneMaxLat[zone]) {
+                        rejectedZones.increment();
+                        continue;
+                    }
+                    if (line == null) {
+                        Coordinate[] coordinates = new Coordinate[] {
+                                new Coordinate(startLng, startLat), new Coordinate(endLng, endLat)};
+                        line = Utils.geometryFactory.createLineString(coordinates);
+                    }
+                    if (preparedZones[zone].intersects(line)) {
+                        intersections.increment();
+                        return true;
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return number of lines checked, zones considered, zones rejected by
+     *         their bounding box and intersections found by the index.
+     */
+    protected String getStatistics() {
+        long candidates = candidateZones.sum();
+        long rejected = rejectedZones.sum();
+        return "No-fly zone index: " + queries.sum() + " lines checked against " + preparedZones.length
+                + " zones, " + candidates + " candidate zones, " + rejected + " rejected by bounding box, "
+                + (candidates - rejected) + " exact tests, " + intersections.sum() + " intersections";
+    }
+
+    private int column(double longitude) {
+        int column = (int) Math.floor((longitude - Constants.LONGITUDE_WEST_BOUNDARY) / cellSize);
+        return Math.max(0, Math.min(columns - 1, column));
+    }
+
+    private int row(double latitude) {
+        int row = (int) Math.floor((latitude - Constants.LATITUDE_SOUTH_BOUNDARY) / cellSize);
+        return Math.max(0, Math.min(rows - 1, row));
+    }
+}
@@ -11,10 +11,13 @@ public class Order {
     private Date date;
     private String matricNo;
     private String deliveryLocation;
+    private Location deliveryCoordinates;
     private List<Location> goalLocations;
     private List<Shop> shopsInOrder;
     private List<String> itemsToBeDelivered;
     private int cost;
+    //Number of the drone that delivered the order, 0 until it is delivered.
+    private int droneId;
 
     /**
      * @return unique order number
@@ -45,11 +48,10 @@ public class Order {
      * @return delivery location of the order
      */
     protected Location getDeliveryLocation() {
-        WordsAddress.Coordinates deliveryCoordinates = ServerRequest.getWordsAddress(this.deliveryLocation).coordinates;
-        double latitude = deliveryCoordinates.lat;
-        double longitude = deliveryCoordinates.lng;
-        Location location = new Location(longitude, latitude);
-        return location;
+        if (this.deliveryCoordinates == null) {
+            this.deliveryCoordinates = WordsAddressCache.getLocation(this.deliveryLocation);
+        }
+        return this.deliveryCoordinates;
     }
 
     /**
@@ -95,7 +97,10 @@ public class Order {
      * @param deliveryLocation a What3Words address representing the location
      *                          the order needs to be delivered at.
      */
-    protected void setDeliveryLocation(String deliveryLocation) { this.deliveryLocation = deliveryLocation; }
+    protected void setDeliveryLocation(String deliveryLocation) {
+        this.deliveryLocation = deliveryLocation;
+        this.deliveryCoordinates = null;
+    }
 
     /**
      * @param goalLocations list of Locations representing the locations the drone
@@ -115,9 +120,42 @@ public class Order {
      */
     protected void setItemsToBeDelivered(List<String> itemsToBeDelivered) { this.itemsToBeDelivered = itemsToBeDelivered; }
 
+    /**
+     * @return number of the drone that delivered the order, 0 if it has
+     *         not been delivered.
+     */
+    protected int getDroneId() { return this.droneId; }
+
+    /**
+     * @param droneId number of the drone that delivered the order
+     */
+    protected void setDroneId(int droneId) { this.droneId = droneId; }
+
     /**
      * @param cost the total cost of the order including the 50p charge for delivery
      */
     protected void setCost(int cost) { this.cost = cost; }
 
+    /**
+     * Works out once the details of the order that only depend on its
+     * items, i.e. the shops involved and the total cost, so that they are
+     * not recalculated every time the order is considered. The delivery
+     * location is resolved the first time it is needed. Each item is
+     * looked up once in the catalogue of menus, and the items that no shop
+     * sells are reported and left out of the cost.
+     *
+     * @param catalogue the menus of all the shops a customer can order from
+     */
+    protected void precompute(MenuCatalogue catalogue) {
+        MenuCatalogue.ShopsAndCost shopsAndCost = catalogue.getShopsAndCost(this.itemsToBeDelivered);
+        for (String item : shopsAndCost.unknownItems) {
+            Log.warn("Order " + this.orderNo + " has item " + item + " which is not on the menu of any shop");
+        }
+        if (shopsAndCost.shops.size() > 2) {
+            Log.warn("Order " + this.orderNo + " includes items from more than 2 shops.");
+        }
+        this.shopsInOrder = shopsAndCost.shops;
+        this.cost = shopsAndCost.cost;
+    }
+
 }
@@ -0,0 +1,162 @@
+package uk.ac.ed.inf;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+
+/**
+ * Puts the orders of a date in line using the same greedy rule as before,
+ * i.e. repeatedly taking the order with the highest cost to total distance
+ * ratio from the delivery point of the previous order, but without
+ * recalculating anything that does not depend on where the drone is.
+ *
+ * The distances from every location the drone can start an order from
+ * (the starting position and every delivery point) to every shop are
+ * worked out once into a matrix, and so are the distances within each
+ * order. Working out the ratio of an order is then a few array reads.
+ */
+public class OrderScheduler {
+
+    private final List<Order> orders;
+    private final int[] cost;
+    //Index of the first and second shop of each order in the list of shops,
+    // or -1 if the order has no such shop.
+    private final int[] firstShop;
+    private final int[] secondShop;
+    //Distances between the shops of each order and to its delivery location.
+    private final double[] betweenShops;
+    private final double[] firstShopToDelivery;
+    private final double[] secondShopToDelivery;
+    //Distance from each location an order can be started from to each shop.
+    // Row 0 is the starting position, row i + 1 the delivery location of order i.
+    private final double[][] sourceToShop;
+
+    /**
+     * Class constructor working out the distances needed to put the
+     * given orders in line. The orders must already know their shops
+     * and cost.
+     *
+     * @param orders        the orders to put in line
+     * @param startLocation the location the drone starts from
+     */
+    protected OrderScheduler(List<Order> orders, Location startLocation) {
+        this.orders = new ArrayList<>(orders);
+        int n = orders.size();
+        cost = new int[n];
+        firstShop = new int[n];
+        secondShop = new int[n];
+        betweenShops = new double[n];
+        firstShopToDelivery = new double[n];
+        secondShopToDelivery = new double[n];
+
+        Map<Shop, Integer> shopIds = new IdentityHashMap<>();
+        List<Location> shopLocations = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            Order order = orders.get(i);
+            List<Shop> shops = order.getShopsInOrder();
+            cost[i] = order.getCost();
+            firstShop[i] = shops.isEmpty() ? -1 : shopId(shops.get(0), shopIds, shopLocations);
+            secondShop[i] = shops.size() < 2 ? -1 : shopId(shops.get(1), shopIds, shopLocations);
+            Location delivery = order.getDeliveryLocation();
+            if (firstShop[i] != -1) {
+                firstShopToDelivery[i] = Utils.getDistance(shopLocations.get(firstShop[i]), delivery);
+            }
+            if (secondShop[i] != -1) {
+                betweenShops[i] = Utils.getDistance(shopLocations.get(firstShop[i]), shopLocations.get(secondShop[i]));
+                secondShopToDelivery[i] = Utils.getDistance(shopLocations.get(secondShop[i]), delivery);
+            }
+        }
+
+        sourceToShop = new double[n + 1][shopLocations.size()];
+        for (int source = 0; source <= n; source++) {
+            Location from = source == 0 ? startLocation : orders.get(source - 1).getDeliveryLocation();
+            for (int shop = 0; shop < shopLocations.size(); shop++) {
+                sourceToShop[source][shop] = Utils.getDistance(from, shopLocations.get(shop));
+            }
+        }
+    }
+
+    /**
+     * Returns the orders in the order they should be executed. The order
+     * with the highest cost to total distance ratio from the starting
+     * position goes first, then the one with the highest ratio from its
+     * delivery location, and so on. Ties go to the order that comes first
+     * in the list the scheduler was given.
+     *
+     * The location the ratios are measured from changes after every choice,
+     * so every remaining order is scored again at every step. Scoring is a
+     * few array reads, so this linear scan is cheaper than keeping a heap
+     * up to date.
+     *
+     * @return Queue with the orders to execute in order
+     */
+    protected Queue<Order> getOrdersInLine() {
+        int n = orders.size();
+        //Indices of the orders not yet in line, kept in their original order.
+        int[] remaining = new int[n];
+        for (int i = 0; i < n; i++) remaining[i] = i;
+        int remainingCount = n;
+
+        Queue<Order> ordersInLine = new LinkedList<>();
+        int source = 0;
+        while (remainingCount > 0) {
+            int highestValuePosition = 0;
+            double maxValue = Double.MIN_VALUE;
+            for (int position = 0; position < remainingCount; position++) {
+                double value = getValue(remaining[position], source);
+                if (value > maxValue) {
+                    maxValue = value;
+                    highestValuePosition = position;
+                }
+            }
+            int chosen = remaining[highestValuePosition];
+            ordersInLine.add(orders.get(chosen));
+            System.arraycopy(remaining, highestValuePosition + 1, remaining, highestValuePosition,
+                    remainingCount - highestValuePosition - 1);
+            remainingCount--;
+            source = chosen + 1;
+        }
+        return ordersInLine;
+    }
+
+    /**
+     * Returns the cost to total distance ratio of an order when the drone
+     * starts from the given location, visiting the closest of the order's
+     * shops first.
+     *
+     * @param order  index of the order
+     * @param source row of the location the drone starts from
+     * @return the cost to total distance ratio value
+     */
+    private double getValue(int order, int source) {
+        double totalDistanceInOrder;
+        if (firstShop[order] == -1) {
+            //None of the items are on a menu, so the order cannot be collected.
+            return 0;
+        } else if (secondShop[order] == -1) {
+            totalDistanceInOrder = sourceToShop[source][firstShop[order]] + firstShopToDelivery[order];
+        } else {
+            double d0 = sourceToShop[source][firstShop[order]];
+            double d1 = sourceToShop[source][secondShop[order]];
+            if (d1 > d0) {
+                totalDistanceInOrder = d0 + betweenShops[order] + secondShopToDelivery[order];
+            } else {
+                totalDistanceInOrder = d1 + betweenShops[order] + firstShopToDelivery[order];
+            }
+        }
+        return cost[order] / totalDistanceInOrder;
+    }
+
+    private static int shopId(Shop shop, Map<Shop, Integer> shopIds, List<Location> shopLocations) {
+        Integer id = shopIds.get(shop);
+        if (id == null) {
+            id = shopLocations.size();
+            shopIds.put(shop, id);
+            shopLocations.add(shop.getShopLocation());
+        }
+        return id;
+    }
+}
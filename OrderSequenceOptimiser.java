@@ -0,0 +1,400 @@
+package uk.ac.ed.inf;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Improves the sequence the orders are executed in, selected with the
+ * optional optimise=true argument, to deliver as many pence as possible
+ * within the moves of the drone's battery. The greedy cost to distance
+ * queue is used as the first sequence and is improved by local search
+ * (swapping two orders, reversing a run of orders with 2-opt, moving a run
+ * of up to three orders elsewhere with or-opt) until a time budget runs
+ * out, optionally from several starts at once on a pool of threads.
+ *
+ * A sequence is scored the way the drone executes it when optimising:
+ * orders are flown in turn, visiting their shops in the order needing the
+ * fewest moves or else the closest shop first, and an order
+ * that would leave too few moves to get back to the starting position is
+ * skipped. The moves of the legs come from a matrix between the starting
+ * position, the shops and the delivery points worked out once. Every leg a
+ * sequence can use, i.e. from the starting position or a delivery point to
+ * a shop, between the shops of an order, from the shops of an order to its
+ * delivery point and from a delivery point back to the starting position,
+ * is planned by the route planner unless it already knows it, so detours
+ * around the no-fly zones are counted. The legs from the starting position
+ * start where the drone does and are flown from the leg cache. The others
+ * are planned from the key-locations themselves, while the drone starts
+ * them wherever it got close to the key-location, so the drone still
+ * checks every order against the moves it has actually left.
+ */
+public class OrderSequenceOptimiser {
+
+    //Number of iterations without improvement after which a search
+    // starts again from its best sequence shaken by a few random swaps.
+    private static final int ITERATIONS_BEFORE_PERTURBING = 2000;
+    private static final int PERTURBATION_SWAPS = 3;
+    private static final int MAX_OR_OPT_LENGTH = 3;
+
+    private final List<Order> orders;
+    private final int[] cost;
+    //Key-location of the first and second shop of each order in the order
+    // they are considered, -1 if there is no such shop, and of the delivery.
+    private final int[] firstShop;
+    private final int[] secondShop;
+    private final int[] delivery;
+    //Straight-line distance and moves, including the hovering move, between
+    // key-locations. Key-location 0 is the starting position.
+    private final double[][] distance;
+    private final int[][] legMoves;
+    private final int maxMoves;
+    //True if the shops of an order are visited in the order needing the
+    // fewest moves, false if the closest shop is visited first.
+    private final boolean shopOrderByMoves;
+
+    /**
+     * Class constructor working out the matrix of leg moves between the
+     * starting position, the shops of the orders and their delivery points,
+     * planning the legs a sequence can use.
+     *
+     * @param orders        the orders to sequence, which must know their shops
+     * @param startLocation the location the drone starts from and returns to
+     * @param planner       the route planner the legs are planned with, which
+     *                      should go through the leg cache
+     * @param maxMoves      the number of moves of the drone's battery
+     * @param shopOrderByMoves true if the drone visits the shops of an order in
+     *                      the order needing the fewest moves, as GoalSequencer does
+     */
+    protected OrderSequenceOptimiser(List<Order> orders, Location startLocation, RoutePlanner planner, int maxMoves,
+                                     boolean shopOrderByMoves) {
+        this.orders = new ArrayList<>(orders);
+        this.maxMoves = maxMoves;
+        this.shopOrderByMoves = shopOrderByMoves;
+        int n = orders.size();
+        cost = new int[n];
+        firstShop = new int[n];
+        secondShop = new int[n];
+        delivery = new int[n];
+
+        List<Location> locations = new ArrayList<>();
+        locations.add(startLocation);
+        Map<Shop, Integer> shopIds = new IdentityHashMap<>();
+        for (int i = 0; i < n; i++) {
+            Order order = orders.get(i);
+            List<Shop> shops = order.getShopsInOrder();
+            cost[i] = order.getCost();
+            firstShop[i] = shops.isEmpty() ? -1 : keyLocation(shops.get(0), shopIds, locations);
+            secondShop[i] = shops.size() < 2 ? -1 : keyLocation(shops.get(1), shopIds, locations);
+            delivery[i] = locations.size();
+            locations.add(order.getDeliveryLocation());
+        }
+
+        int size = locations.size();
+        distance = new double[size][size];
+        legMoves = new int[size][size];
+        for (int a = 0; a < size; a++) {
+            for (int b = 0; b < size; b++) {
+                distance[a][b] = Utils.getDistance(locations.get(a), locations.get(b));
+                legMoves[a][b] = 1 + AStarPlanner.movesLowerBound(distance[a][b]);
+            }
+        }
+        planLegs(planner, locations);
+    }
+
+    //Replaces the lower bound of the legs a sequence can use by their planned moves.
+    private void planLegs(RoutePlanner planner, List<Location> locations) {
+        long start = System.nanoTime();
+        int size = locations.size();
+        boolean[][] used = new boolean[size][size];
+        List<Integer> froms = new ArrayList<>();
+        froms.add(0);
+        for (int d : delivery) {
+            froms.add(d);
+            used[d][0] = true;
+        }
+        for (int i = 0; i < orders.size(); i++) {
+            int[] stops = {firstShop[i], secondShop[i]};
+            for (int from : froms) {
+                if (from == delivery[i]) continue;
+                for (int stop : stops) {
+                    if (stop != -1) used[from][stop] = true;
+                }
+                if (firstShop[i] == -1) used[from][delivery[i]] = true;
+            }
+            for (int stop : stops) {
+                if (stop != -1) used[stop][delivery[i]] = true;
+            }
+            if (secondShop[i] != -1) {
+                used[firstShop[i]][secondShop[i]] = true;
+                used[secondShop[i]][firstShop[i]] = true;
+            }
+        }
+
+        int known = 0;
+        int planned = 0;
+        int unreachable = 0;
+        for (int a = 0; a < size; a++) {
+            for (int b = 0; b < size; b++) {
+                if (!used[a][b] || a == b) continue;
+                int moves = planner.getKnownMoveCount(locations.get(a), locations.get(b));
+                if (moves >= 0) {
+                    known++;
+                } else {
+                    try {
+                        moves = planner.planLeg(locations.get(a), locations.get(b)).size();
+                        planned++;
+                    } catch (IllegalStateException e) {
+                        //An order needing the leg never fits.
+                        moves = maxMoves;
+                        unreachable++;
+                    }
+                }
+                legMoves[a][b] = 1 + moves;
+            }
+        }
+        Log.info("Leg matrix of the order sequence: " + known + " legs known, " + planned + " planned, "
+                + unreachable + " without a route, in " + String.format("%.1f", (System.nanoTime() - start) / 1e6)
+                + " ms");
+    }
+
+    /**
+     * Improves the given sequence of the orders until the time budget runs
+     * out. The first start is the given sequence itself and every other
+     * start is a random shuffle of it, each searched on its own thread.
+     *
+     * @param ordersInLine the orders in the sequence to improve
+     * @param timeBudgetMs how long to search for, in milliseconds
+     * @param starts       number of searches run at once
+     * @param seed         seed of the random choices of the searches
+     * @return the best sequence found, containing every order
+     */
+    protected Queue<Order> optimise(Queue<Order> ordersInLine, long timeBudgetMs, int starts, long seed) {
+        long startTime = System.nanoTime();
+        long deadline = startTime + timeBudgetMs * 1000000L;
+        int[] initial = new int[ordersInLine.size()];
+        int position = 0;
+        for (Order order : ordersInLine) {
+            initial[position++] = indexOf(order);
+        }
+        long initialScore = score(initial);
+
+        int threads = Math.min(starts, Runtime.getRuntime().availableProcessors());
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(threads, 1));
+        List<Callable<Search>> searches = new ArrayList<>();
+        for (int s = 0; s < Math.max(starts, 1); s++) {
+            int start = s;
+            searches.add(() -> {
+                Random random = new Random(seed + start);
+                int[] sequence = initial.clone();
+                if (start > 0) shuffle(sequence, random);
+                Search search = new Search(sequence, random);
+                search.run(deadline);
+                return search;
+            });
+        }
+        Search best = null;
+        long evaluations = 0;
+        try {
+            for (Future<Search> future : executor.invokeAll(searches)) {
+                Search search = future.get();
+                evaluations += search.evaluations;
+                if (best == null || search.bestScore > best.bestScore) {
+                    best = search;
+                }
+            }
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Could not optimise the sequence of the orders", e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while optimising the sequence of the orders", e);
+        } finally {
+            executor.shutdown();
+        }
+
+        Log.info("Order sequence optimised: estimated " + pence(initialScore) + " -> " + pence(best.bestScore)
+                + " pence, " + movesUsed(initialScore) + " -> " + movesUsed(best.bestScore) + " moves, "
+                + evaluations + " sequences from " + searches.size() + " starts in "
+                + String.format("%.1f", (System.nanoTime() - startTime) / 1e6) + " ms");
+        Queue<Order> optimised = new LinkedList<>();
+        for (int order : best.bestSequence) {
+            optimised.add(orders.get(order));
+        }
+        return optimised;
+    }
+
+    /**
+     * Scores a sequence of orders by flying them in turn and skipping the
+     * ones that do not fit in the moves left with the return to the
+     * starting position. Higher is better: the pence delivered come first
+     * and ties go to the sequence using fewer moves.
+     *
+     * @param sequence indices of the orders in the order they are flown
+     * @return the pence delivered times 2^20 less the moves used
+     */
+    protected long score(int[] sequence) {
+        int at = 0;
+        int movesUsed = 0;
+        long pence = 0;
+        for (int order : sequence) {
+            int first = firstShop[order];
+            int second = secondShop[order];
+            if (second != -1) {
+                boolean secondFirst = distance[at][second] <= distance[at][first];
+                if (shopOrderByMoves) {
+                    int d = delivery[order];
+                    int firstToSecond = legMoves[at][first] + legMoves[first][second] + legMoves[second][d];
+                    int secondToFirst = legMoves[at][second] + legMoves[second][first] + legMoves[first][d];
+                    if (firstToSecond != secondToFirst) secondFirst = secondToFirst < firstToSecond;
+                }
+                if (secondFirst) {
+                    first = second;
+                    second = firstShop[order];
+                }
+            }
+            int moves = 0;
+            int from = at;
+            if (first != -1) {
+                moves += legMoves[from][first];
+                from = first;
+            }
+            if (second != -1) {
+                moves += legMoves[from][second];
+                from = second;
+            }
+            moves += legMoves[from][delivery[order]];
+            if (movesUsed + moves + legMoves[delivery[order]][0] <= maxMoves) {
+                movesUsed += moves;
+                pence += cost[order];
+                at = delivery[order];
+            }
+        }
+        movesUsed += legMoves[at][0];
+        return (pence << 20) - movesUsed;
+    }
+
+    private static long pence(long score) { return (score + (1 << 20) - 1) >> 20; }
+
+    private static long movesUsed(long score) { return (pence(score) << 20) - score; }
+
+    private int indexOf(Order order) {
+        for (int i = 0; i < orders.size(); i++) {
+            if (orders.get(i) == order) return i;
+        }
+        throw new IllegalArgumentException("Order " + order.getOrderNo() + " was not given to the optimiser");
+    }
+
+    private static void shuffle(int[] sequence, Random random) {
+        for (int i = sequence.length - 1; i > 0; i--) {
+            swap(sequence, i, random.nextInt(i + 1));
+        }
+    }
+
+    private static void swap(int[] sequence, int i, int j) {
+        int order = sequence[i];
+        sequence[i] = sequence[j];
+        sequence[j] = order;
+    }
+
+    private static void reverse(int[] sequence, int i, int j) {
+        while (i < j) {
+            swap(sequence, i++, j--);
+        }
+    }
+
+    //Moves the run of orders starting at from to start at to instead.
+    private static void moveRun(int[] sequence, int from, int length, int to) {
+        int[] run = new int[length];
+        System.arraycopy(sequence, from, run, 0, length);
+        if (to < from) {
+            System.arraycopy(sequence, to, sequence, to + length, from - to);
+        } else {
+            System.arraycopy(sequence, from + length, sequence, from, to - from);
+        }
+        System.arraycopy(run, 0, sequence, to, length);
+    }
+
+    private static int keyLocation(Shop shop, Map<Shop, Integer> shopIds, List<Location> locations) {
+        Integer id = shopIds.get(shop);
+        if (id == null) {
+            id = locations.size();
+            shopIds.put(shop, id);
+            locations.add(shop.getShopLocation());
+        }
+        return id;
+    }
+
+    /**
+     * A local search from one start, keeping the best sequence it finds.
+     * A random change is kept if it scores at least as well as the current
+     * sequence, and the search is shaken when it stops improving.
+     */
+    private class Search {
+        private final Random random;
+        private final int[] current;
+        private long currentScore;
+        private int[] bestSequence;
+        private long bestScore;
+        private long evaluations;
+
+        private Search(int[] sequence, Random random) {
+            this.random = random;
+            this.current = sequence;
+            this.currentScore = score(sequence);
+            this.bestSequence = sequence.clone();
+            this.bestScore = currentScore;
+        }
+
+        private void run(long deadline) {
+            int n = current.length;
+            if (n < 2) return;
+            int[] candidate = new int[n];
+            int sinceImprovement = 0;
+            while ((evaluations & 255) != 0 || System.nanoTime() < deadline) {
+                System.arraycopy(current, 0, candidate, 0, n);
+                int i = random.nextInt(n);
+                int j = random.nextInt(n);
+                switch (random.nextInt(3)) {
+                    case 0:
+                        swap(candidate, i, j);
+                        break;
+                    case 1:
+                        reverse(candidate, Math.min(i, j), Math.max(i, j));
+                        break;
+                    default:
+                        int length = 1 + random.nextInt(Math.min(MAX_OR_OPT_LENGTH, n - 1));
+                        int from = random.nextInt(n - length + 1);
+                        int to = random.nextInt(n - length + 1);
+                        moveRun(candidate, from, length, to);
+                }
+                long candidateScore = score(candidate);
+                evaluations++;
+                if (candidateScore >= currentScore) {
+                    System.arraycopy(candidate, 0, current, 0, n);
+                    currentScore = candidateScore;
+                }
+                if (currentScore > bestScore) {
+                    bestScore = currentScore;
+                    bestSequence = current.clone();
+                    sinceImprovement = 0;
+                } else if (++sinceImprovement == ITERATIONS_BEFORE_PERTURBING) {
+                    System.arraycopy(bestSequence, 0, current, 0, n);
+                    for (int k = 0; k < PERTURBATION_SWAPS; k++) {
+                        swap(current, random.nextInt(n), random.nextInt(n));
+                    }
+                    currentScore = score(current);
+                    sinceImprovement = 0;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package uk.ac.ed.inf;
+
+import java.sql.SQLException;
+import java.util.List;
+
+/**
+ * Where the orders placed on each date are read from and where the
+ * deliveries made and the moves of the drone are written to.
+ */
+public interface OrderStore extends AutoCloseable {
+
+    /**
+     * Creates the tables the results are written to, dropping them
+     * first if they already exist.
+     *
+     * @throws SQLException
+     */
+    void createTables() throws SQLException;
+
+    /**
+     * Returns the orders placed on the given date with their items,
+     * shops and cost worked out.
+     *
+     * @param date      the date to get the orders for
+     * @param catalogue the menus of all the shops a customer can order from
+     * @return list of the orders placed on the date
+     * @throws SQLException
+     */
+    List<Order> getHydratedOrders(Date date, MenuCatalogue catalogue) throws SQLException;
+
+    /**
+     * Writes the deliveries made and the moves of the drone, either all
+     * of them or none.
+     *
+     * @param deliveriesMade the orders that have been delivered
+     * @param flightLogs     the moves the drone has made, one log per flightpath
+     * @throws SQLException
+     */
+    void insertResults(List<Order> deliveriesMade, List<FlightLog> flightLogs) throws SQLException;
+
+    /**
+     * Releases everything held by the store.
+     */
+    @Override
+    void close();
+}
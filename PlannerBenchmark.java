@@ -0,0 +1,71 @@
+package uk.ac.ed.inf;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Compares the route planners by planning every leg of every order placed on
+ * a date, i.e. from the starting position to the shops of the order, from
+ * the shops to the delivery location and back to the starting position.
+ * Prints the number of moves and the time each planner needed.
+ *
+ * Takes the same command line arguments as App. The database tables are
+ * not modified.
+ */
+public class PlannerBenchmark {
+
+    public static void main(String[] args) throws SQLException {
+        ServerRequest server = new ServerRequest(args);
+        OrderStore database = new DatabaseConnection(args);
+        MapData map = App.openMapData(App.openDataSource(server));
+        List<Order> orders = database.getHydratedOrders(IO.date, map.getMenuCatalogue());
+        database.close();
+
+        //Every leg as a pair of key-locations.
+        List<Location[]> legs = new ArrayList<>();
+        for (Order order : orders) {
+            Location from = Constants.START_LOCATION;
+            for (Location goal : Utils.getGoalLocationsForOrder(order, order.getShopsInOrder(), from)) {
+                legs.add(new Location[] {from, goal});
+                from = goal;
+            }
+            legs.add(new Location[] {from, Constants.START_LOCATION});
+        }
+
+        RoutePlanner[] planners = {
+                new GreedyPlanner(map.getNoFlyZoneIndex(), map.getLandmarks()),
+                new AStarPlanner(map.getNoFlyZoneIndex(), Constants.ASTAR_RESOLUTION, Constants.ASTAR_MAX_EXPANSIONS)
+        };
+        int[][] movesPerLeg = new int[planners.length][legs.size()];
+        long[] nanos = new long[planners.length];
+        int[] failures = new int[planners.length];
+        for (int p = 0; p < planners.length; p++) {
+            long start = System.nanoTime();
+            for (int l = 0; l < legs.size(); l++) {
+                try {
+                    movesPerLeg[p][l] = planners[p].planLeg(legs.get(l)[0], legs.get(l)[1]).size();
+                } catch (IllegalStateException e) {
+                    movesPerLeg[p][l] = -1;
+                    failures[p]++;
+                }
+            }
+            nanos[p] = System.nanoTime() - start;
+        }
+
+        int fewerMoves = 0;
+        for (int l = 0; l < legs.size(); l++) {
+            if (movesPerLeg[1][l] >= 0 && movesPerLeg[1][l] < movesPerLeg[0][l]) fewerMoves++;
+        }
+        System.out.println("Legs planned: " + legs.size());
+        for (int p = 0; p < planners.length; p++) {
+            int totalMoves = 0;
+            for (int moves : movesPerLeg[p]) {
+                if (moves > 0) totalMoves += moves;
+            }
+            System.out.println(String.format("%-14s %7d moves %9.1f ms %4d failed legs",
+                    planners[p].getClass().getSimpleName(), totalMoves, nanos[p] / 1e6, failures[p]));
+        }
+        System.out.println("Legs where A* needs fewer moves than greedy: " + fewerMoves);
+    }
+}
@@ -0,0 +1,36 @@
+package uk.ac.ed.inf;
+
+import java.util.List;
+
+/**
+ * Plans the moves the drone makes to get from one location to another
+ * while staying in the confined area and avoiding the no-fly zones.
+ */
+public interface RoutePlanner {
+
+    /**
+     * Returns the moves that take the drone from the start location
+     * until it is close to the goal location. The hovering move made
+     * when the goal is reached is not included.
+     *
+     * @param startLocation the location the drone starts from
+     * @param goalLocation  the location the drone needs to get close to
+     * @return the moves in the order they are made
+     *
+     * @throws IllegalStateException if no route to the goal could be found
+     */
+    List<Move> planLeg(Location startLocation, Location goalLocation);
+
+    /**
+     * Returns the number of moves of a leg if it is known without planning
+     * it, e.g. because it has been planned before and cached.
+     *
+     * @param startLocation the location the drone starts from
+     * @param goalLocation  the location the drone needs to get close to
+     * @return number of moves of the leg, not counting the hovering move,
+     *         or -1 if it is not known
+     */
+    default int getKnownMoveCount(Location startLocation, Location goalLocation) {
+        return -1;
+    }
+}
@@ -1,24 +1,22 @@
 package uk.ac.ed.inf;
 
 import java.io.IOException;
-import java.lang.reflect.Type;
 import java.net.http.*;
 import java.net.URI;
 import java.net.ConnectException;
-import java.util.ArrayList;
-import java.util.List;
-
-import com.google.gson.Gson;
-import com.google.gson.reflect.TypeToken;
-import com.mapbox.geojson.Feature;
-import com.mapbox.geojson.FeatureCollection;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * Obtains connection and data from the web server
  */
-public class ServerRequest {
+public class ServerRequest implements MapDataSource {
 
     private static final HttpClient CLIENT = HttpClient.newHttpClient();
+    //Number of requests sent, in total and by each thread, so that
+    // planning runs can report how many requests they caused.
+    private static final LongAdder totalRequests = new LongAdder();
+    private static final ThreadLocal<long[]> requestsOnThread = ThreadLocal.withInitial(() -> new long[1]);
 
     /**
      * Class constructor which makes sure to parse the
@@ -43,102 +41,75 @@ public class ServerRequest {
     protected static String getRequest(String path) {
         String urlString = Constants.SERVER_PROTOCOL + Constants.MACHINE_NAME + IO.server_port + path;
         HttpRequest request = HttpRequest.newBuilder().uri(URI.create(urlString)).build();
+        totalRequests.increment();
+        requestsOnThread.get()[0]++;
         String responseBody = "";
         try {
-            HttpResponse<String> response = CLIENT.send(request, HttpResponse.BodyHandlers.ofString());
-            if (response.statusCode() == 200) {
-                responseBody = response.body();
-            } else if (response.statusCode() == 404){
-                System.err.println("Could not find anything");
-            } else {
-                System.err.println("Unable to connect to " + Constants.MACHINE_NAME+
-                        " at port " + IO.server_port + ".");
-            }
+            responseBody = getBody(CLIENT.send(request, HttpResponse.BodyHandlers.ofString()));
         } catch (ConnectException e) {
-            System.err.println(e);
-            System.err.println("Fatal error: Unable to connect to " + Constants.MACHINE_NAME
-                    + " at port " + IO.server_port + ".");
-            System.err.println("Have you checked the server is running?");
+            Log.error(e + System.lineSeparator() + "Fatal error: Unable to connect to " + Constants.MACHINE_NAME
+                    + " at port " + IO.server_port + "." + System.lineSeparator()
+                    + "Have you checked the server is running?");
             System.exit(1); // Exit the application
         } catch (InterruptedException | IOException e) {
-            e.printStackTrace();
+            Log.error("Request to " + urlString + " failed", e);
         }
         return responseBody;
     }
 
     /**
-     * Returns a list of NoFlyZone members representing
-     * each of the no fly zones obtained from the web server.
+     * Performs a get request like getRequest but without waiting for the
+     * response, so that many requests can be waiting at the same time.
+     * The future fails if the web server cannot be reached.
      *
-     * @return list of no fly zones as NoFlyZone objects
+     * @param path	path to be used for the get Request
+     * @return      future string containing the result of the request
      */
-    protected List<NoFlyZone> getNoFlyZones() {
-        String path = "/buildings/no-fly-zones.geojson";
-        String source = getRequest(path);
-        FeatureCollection fc = FeatureCollection.fromJson(source);
-        List<Feature> features = fc.features();
-        List<NoFlyZone> noFlyZones = new ArrayList<>();
-        assert features != null;
-        for (Feature feature : features) {
-            NoFlyZone noFlyZone = new NoFlyZone(feature);
-            noFlyZones.add(noFlyZone);
-        }
-        return noFlyZones;
+    protected static CompletableFuture<String> getRequestAsync(String path) {
+        String urlString = Constants.SERVER_PROTOCOL + Constants.MACHINE_NAME + IO.server_port + path;
+        HttpRequest request = HttpRequest.newBuilder().uri(URI.create(urlString)).build();
+        totalRequests.increment();
+        requestsOnThread.get()[0]++;
+        return CLIENT.sendAsync(request, HttpResponse.BodyHandlers.ofString()).thenApply(ServerRequest::getBody);
     }
 
-    /**
-     * Returns a list of the 2 landmarks involved around the campus
-     * represented by a Landmark object.
-     *
-     * @return a list of landmarks as Landmark objects.
-     */
-    protected List<Landmark> getLandmarks() {
-        String path = "/buildings/landmarks.geojson";
-        String source = getRequest(path);
-        FeatureCollection fc = FeatureCollection.fromJson(source);
-        List<Feature> features = fc.features();
-        List<Landmark> landmarks = new ArrayList<>();
-        assert features != null;
-        for (Feature feature : features) {
-            Landmark landmark = new Landmark(feature);
-            landmarks.add(landmark);
+    private static String getBody(HttpResponse<String> response) {
+        if (response.statusCode() == 200) {
+            return response.body();
+        } else if (response.statusCode() == 404){
+            Log.warn("Could not find anything at " + response.uri());
+        } else {
+            Log.warn("Unable to connect to " + Constants.MACHINE_NAME+
+                    " at port " + IO.server_port + ".");
         }
-        return landmarks;
+        return "";
     }
 
     /**
-     * Returns a list of the shops involved in the delivery scheme
-     * obtained from the menus directory in the WebServer.
+     * Returns the number of requests sent to the web server by the
+     * current thread. Planning runs take the difference between two
+     * calls to find out how many requests a step caused.
      *
-     * @return a list of the shops involved in the delivery scheme
-     *         as Shop objects
+     * @return number of requests sent by the current thread
      */
-    protected List<Shop> getShops() {
-        String path = "/menus/menus.json";
-        String source = getRequest(path);
-        Type listType = new TypeToken<ArrayList<Shop>>() {}.getType();
-        List<Shop> shops = new Gson().fromJson(source, listType);
-        return shops;
+    protected static long getRequestCount() {
+        return requestsOnThread.get()[0];
     }
 
     /**
-     * Returns an object of the WordsDetails class representing
-     * the address of the What3Words string given as argument after
-     * deserialising it.
-     *
-     * @param words What3Words address
-     * @return WordsAddress object corresponding to the What3Words address
-     *         we got from the server
+     * @return number of requests sent to the web server by all threads.
      */
-    protected static WordsAddress getWordsAddress(String words) {
-        String[] splittedWords = words.split("\\.");
-        String path = "/words/" + splittedWords[0] + "/" + splittedWords[1]
-                + "/" + splittedWords[2] + "/" + "details.json";
-
-        String source = getRequest(path);
+    protected static long getTotalRequestCount() {
+        return totalRequests.sum();
+    }
 
-        WordsAddress address = new Gson().fromJson(source, WordsAddress.class);
-        return address;
+    @Override
+    public String read(String path) {
+        return getRequest(path);
     }
 
+    @Override
+    public CompletableFuture<String> readAsync(String path) {
+        return getRequestAsync(path);
+    }
 }
@@ -31,10 +31,6 @@ public class Shop {
      * @return location representing the shop's position
      */
     protected Location getShopLocation() {
-        WordsAddress.Coordinates shopCoordinates = ServerRequest.getWordsAddress(location).coordinates;
-        double latitude = shopCoordinates.lat;
-        double longitude = shopCoordinates.lng;
-        Location location = new Location(longitude, latitude);
-        return location;
+        return WordsAddressCache.getLocation(location);
     }
 }
@@ -0,0 +1,39 @@
+package uk.ac.ed.inf;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+
+/**
+ * Reads the menus, no-fly zones, landmarks and What3Words details from a
+ * local directory laid out like the web server's, e.g. a copy of the
+ * directory the web server serves. Selected with the optional
+ * data-dir=<directory> argument, so that runs do not need the web server.
+ */
+public class SnapshotDataSource implements MapDataSource {
+
+    private final Path directory;
+
+    /**
+     * Class constructor specifying the directory to read the files from.
+     *
+     * @param directory the directory laid out like the web server's
+     */
+    protected SnapshotDataSource(Path directory) {
+        this.directory = directory;
+    }
+
+    @Override
+    public String read(String path) {
+        Path file = directory.resolve(path.substring(1));
+        try {
+            return Files.readString(file);
+        } catch (NoSuchFileException e) {
+            Log.warn("Could not find " + file);
+        } catch (IOException e) {
+            Log.error("Could not read " + file, e);
+        }
+        return "";
+    }
+}
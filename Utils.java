@@ -1,6 +1,5 @@
 package uk.ac.ed.inf;
 
-import java.sql.SQLException;
 import java.util.*;
 import org.javatuples.Pair;
 
@@ -15,6 +14,21 @@ public class Utils {
 
     protected static final GeometryFactory geometryFactory = new GeometryFactory();
 
+    //Number of directions the drone can fly in, i.e. every multiple of 10 degrees.
+    protected static final int DIRECTIONS = Constants.MAX_ANGLE_ALLOWED / 10 + 1;
+    //Change in longitude and latitude of a single move in each direction,
+    // indexed by the angle of the move divided by 10.
+    protected static final double[] MOVE_LNG = new double[DIRECTIONS];
+    protected static final double[] MOVE_LAT = new double[DIRECTIONS];
+
+    static {
+        for (int direction = 0; direction < DIRECTIONS; direction++) {
+            double angle_rad = Math.toRadians(direction * 10);
+            MOVE_LNG[direction] = Constants.MOVE_LENGTH * Math.cos(angle_rad);
+            MOVE_LAT[direction] = Constants.MOVE_LENGTH * Math.sin(angle_rad);
+        }
+    }
+
     /**
      * Check if the LongLat point is within the drone's confinement area.
      *
@@ -22,8 +36,19 @@ public class Utils {
      * @return true if the LongLat point is within the confinement area, false otherwise.
      */
     protected static boolean isConfined(Location point) {
-        return (point.getLatitude() > Constants.LATITUDE_SOUTH_BOUNDARY) && (point.getLatitude() < Constants.LATITUDE_NORTH_BOUNDARY)
-                && (point.getLongitude() > Constants.LONGITUDE_WEST_BOUNDARY) && (point.getLongitude() < Constants.LONGITUDE_EAST_BOUNDARY);
+        return isConfined(point.getLongitude(), point.getLatitude());
+    }
+
+    /**
+     * Check if the point with the given coordinates is within the drone's confinement area.
+     *
+     * @param longitude the longitude of the point
+     * @param latitude  the latitude of the point
+     * @return true if the point is within the confinement area, false otherwise.
+     */
+    protected static boolean isConfined(double longitude, double latitude) {
+        return (latitude > Constants.LATITUDE_SOUTH_BOUNDARY) && (latitude < Constants.LATITUDE_NORTH_BOUNDARY)
+                && (longitude > Constants.LONGITUDE_WEST_BOUNDARY) && (longitude < Constants.LONGITUDE_EAST_BOUNDARY);
     }
 
     /**
@@ -63,19 +88,35 @@ public class Utils {
      * Checks if the line starting at 'start' and finishing at
      * 'end' intersects with any of the no fly zones.
      *
+     * @param noFlyZones the no fly zones
      * @param start starting location of the drone's move
      * @param end   ending location of the drone's move
      * @return      true if it intersects, false otherwise
      */
-    protected static boolean doesIntersectWithNoFlyZones(Location start, Location end) {
+    protected static boolean doesIntersectWithNoFlyZones(List<NoFlyZone> noFlyZones, Location start, Location end) {
         Coordinate[] coordinates = new Coordinate[] {start.getJtsCoordinate(), end.getJtsCoordinate()};
         LineString line = Utils.geometryFactory.createLineString(coordinates);
-        for (NoFlyZone zone : BuildFlightpath.noFlyZones) {
+        for (NoFlyZone zone : noFlyZones) {
             if (line.intersects(zone.getJtsPolygon())) return true;
         }
         return false;
     }
 
+    /**
+     * Checks if the line starting at 'start' and finishing at
+     * 'end' intersects with any of the no fly zones, using the
+     * spatial index of the zones.
+     *
+     * @param noFlyZoneIndex spatial index of the no fly zones
+     * @param start starting location of the drone's move
+     * @param end   ending location of the drone's move
+     * @return      true if it intersects, false otherwise
+     */
+    protected static boolean doesIntersectWithNoFlyZones(NoFlyZoneIndex noFlyZoneIndex, Location start, Location end) {
+        return noFlyZoneIndex.intersects(start.getLongitude(), start.getLatitude(),
+                end.getLongitude(), end.getLatitude());
+    }
+
     /**
      * Returns every possible move the drone could perform
      * from a given location, i.e. moves of an angle that
@@ -118,9 +159,8 @@ public class Utils {
             return new Location(currentPos.getLongitude(), currentPos.getLatitude());
 
         } else if (angle >= 0 && angle <= Constants.MAX_ANGLE_ALLOWED && angle % 10 == 0) {
-            double angle_rad = Math.toRadians(angle);
-            var nextLatitude = currentPos.getLatitude() + Constants.MOVE_LENGTH * Math.sin(angle_rad);
-            var nextLongitude = currentPos.getLongitude() + Constants.MOVE_LENGTH * Math.cos(angle_rad);
+            var nextLatitude = currentPos.getLatitude() + MOVE_LAT[angle / 10];
+            var nextLongitude = currentPos.getLongitude() + MOVE_LNG[angle / 10];
             Location nextPosition = new Location(nextLongitude, nextLatitude);
             return nextPosition;
 
@@ -130,26 +170,6 @@ public class Utils {
         }
     }
 
-    /**
-     * Returns the closest landmark in proximity to the location
-     * we provide as argument.
-     *
-     * @param goalLocation
-     * @return closest landmark to location provided as an argument
-     */
-    protected static Landmark getClosestLandmark(Location goalLocation) {
-        Landmark closestLandmark = null;
-        double minDistance = Double.MAX_VALUE;
-        for (Landmark landmark : BuildFlightpath.landmarks) {
-            double distanceToLandmark = getDistance(goalLocation, landmark.getLocation());
-            if (distanceToLandmark < minDistance) {
-                minDistance = distanceToLandmark;
-                closestLandmark = landmark;
-            }
-        }
-        return closestLandmark;
-    }
-
     /**
      * Using the possible moves the drone could make, it returns
      * the one which gets closer to the location the drone has as
@@ -164,117 +184,57 @@ public class Utils {
      */
     protected static Move getOptimalMove(Location startLocation, Location goalLocation,
                                          Integer moveNumber, List<Pair<Integer, Location>> possibleMoves) {
-        System.out.println("We are in getOptimalMove method.");
         Move optimalMove = null;
         var minDistance = Double.MAX_VALUE;
         for (Pair<Integer, Location> move : possibleMoves) {
             var endLocation = move.getValue1();
-            //System.out.println("Checking all possible moves from start location..");
             var distanceFromMoveToGoalLoc = getDistance(endLocation, goalLocation);
             if (distanceFromMoveToGoalLoc < minDistance ) {
                 minDistance = distanceFromMoveToGoalLoc;
                 optimalMove = new Move(startLocation, endLocation, moveNumber, move.getValue0());
             }
         }
-        System.out.println("Optimal move from start location to goal location is found");
         assert optimalMove != null;
         return optimalMove;
     }
 
-
-    /**
-     * Calculates the cost of each order including the base cost
-     * of 50p for the delivery.
-     *
-     * @param items a String of variable length which includes the items
-     *              in the order.
-     * @return an integer which represents the cost of the order in pence.
-     */
-    protected static int getDeliveryCost(List<Shop> shops, List<String> items) {
-        int cost = Constants.DELIVERY_COST;                                //Base cost is 50p for delivery cost.
-
-        for (String item : items) {
-            for (Shop shop : shops) {
-                for (Shop.ItemAndCost itemAndCost : shop.menu) {
-                    if (itemAndCost.item.equals(item)) {
-                        cost += itemAndCost.pence;               //Add to the base cost for every item ordered.
-                        break;
-                    }
-                }
-            }
-        }
-        return cost;
-    }
-
     /**
-     * Returns the shops that are involved in each order.
+     * Returns the move that gets the drone closest to the location it has
+     * as a target without leaving the confined area. The candidate moves are
+     * scored using the precomputed direction table and plain coordinates,
+     * so that only the chosen move is turned into a Move object.
      *
-     * @param shops all the shops we can have orders from.
-     * @param items items that need to be delivered in an order.
-     * @return
+     * @param startLocation     starting location of the drone
+     * @param goalLocation      location the drone needs to get to
+     * @param moveNumber		number of the move
+     * @return the optimal move as a Move object, or null if every move
+     *         would leave the confined area
      */
-    protected static List<Shop> getShopsInOrder(List<Shop> shops, List<String> items) {
-        List<Shop> shopsInOrder = new ArrayList<>();
-        for (String item : items) {
-            for (Shop shop : shops) {
-                for (Shop.ItemAndCost itemAndCost : shop.menu) {
-                    //if the item we need to deliver is in that shop's menu and if the particular
-                    //is not already in our shopsInOrder list, then we add it.
-                    if (itemAndCost.item.equals(item)) {
-                        if (shopsInOrder.isEmpty()) {
-                            shopsInOrder.add(shop);
-                        } else {
-                            //Here we assume that there can't be more than 2 shops in an order as the
-                            // restrictions on the delivery scheme say.
-                            if (!shopsInOrder.contains(shop)) {
-                                shopsInOrder.add(shop);
-                            }
-                        }
-                        break;
-                    }
-                }
+    protected static Move getOptimalMove(Location startLocation, Location goalLocation, int moveNumber) {
+        double startLng = startLocation.getLongitude();
+        double startLat = startLocation.getLatitude();
+        double goalLng = goalLocation.getLongitude();
+        double goalLat = goalLocation.getLatitude();
+
+        int optimalDirection = -1;
+        double minSquaredDistance = Double.MAX_VALUE;
+        for (int direction = 0; direction < DIRECTIONS; direction++) {
+            double endLng = startLng + MOVE_LNG[direction];
+            double endLat = startLat + MOVE_LAT[direction];
+            if (!isConfined(endLng, endLat)) continue;
+            double dLng = endLng - goalLng;
+            double dLat = endLat - goalLat;
+            double squaredDistance = dLng * dLng + dLat * dLat;
+            if (squaredDistance < minSquaredDistance) {
+                minSquaredDistance = squaredDistance;
+                optimalDirection = direction;
             }
         }
-        if (shopsInOrder.size() > 2) {
-            System.err.println("Cannot place an order that includes items from more than 2 shops.");
-        }
-        return shopsInOrder;
-    }
-
+        if (optimalDirection == -1) return null;
 
-
-    /**
-     * Method to calculate the value or metric of each order that is to be used when prioritising which
-     * orders are to be delivered first in order to get a high sampled average percentage
-     * monetary value. The value is calculated by dividing the total cost of the order by the
-     * total Euclidean distance between the locations that need to be visited for that order.
-     *
-     * @param shops all the shops a customer can order from as a list of Shop objects
-     * @param items the items in the particular order we are working with represented
-     *              by a list of String
-     * @param order the order as an Order object
-     * @param currentLocation the current location of the drone
-     * @return the cost to total distance ratio value
-     *
-     * @throws InterruptedException
-     */
-    protected static double getValue(List<Shop> shops, List<String> items, Order order,
-                                     Location currentLocation) throws InterruptedException {
-        List<Shop> shopsInOrder = getShopsInOrder(shops, items);
-        List<Location> goalLocationsInOrder = getGoalLocationsForOrder(order, shopsInOrder, currentLocation);
-        double totalDistanceInOrder = 0;
-
-        if (goalLocationsInOrder.size() == 2) {
-            totalDistanceInOrder = getDistance(currentLocation, goalLocationsInOrder.get(0))
-                    + getDistance(goalLocationsInOrder.get(0), goalLocationsInOrder.get(1));
-        } else if (goalLocationsInOrder.size() == 3) {
-            totalDistanceInOrder = getDistance(currentLocation, goalLocationsInOrder.get(0))
-                    + getDistance(goalLocationsInOrder.get(0), goalLocationsInOrder.get(1))
-                    + getDistance(goalLocationsInOrder.get(1), goalLocationsInOrder.get(2));
-        }
-        double cost = getDeliveryCost(shopsInOrder, items);
-        double value = cost / totalDistanceInOrder;
-        return value;
+        Location endLocation = new Location(startLng + MOVE_LNG[optimalDirection],
+                startLat + MOVE_LAT[optimalDirection]);
+        return new Move(startLocation, endLocation, moveNumber, optimalDirection * 10);
     }
 
 
@@ -285,43 +245,24 @@ public class Utils {
      * ratio (or value) from the current location. First the
      * ratio is calculated from the initial position, then from
      * the delivery point of the last orderin the linked list.
+     * The ratios are worked out by an OrderScheduler from
+     * precomputed distances. The list of orders is not modified.
      *
      *
-     * @param shops          all the shops a customer can order
-     *                       from as a list of Shop objects
+     * @param catalogue      the menus of all the shops a customer
+     *                       can order from
      * @param orders         all the orders placed on that given date
      * @param currentLocation  location from which the drone starts
      * @return  Queue with the orders to execute in order
-     * @throws InterruptedException
      */
-    protected static Queue<Order> getOrdersInLine(List<Shop> shops, List<Order> orders, Location currentLocation)
-            throws InterruptedException, SQLException {
-        var ordersInLine = new LinkedList<Order>();
-
-        while (!orders.isEmpty()) {
-            Order highestValueOrder = null;
-            int highestValueOrderIdx = -1;
-            double maxValue = Double.MIN_VALUE;
-
-            for (int i = 0; i < orders.size(); i++) {
-                var currentOrder = orders.get(i);
-                var itemsInOrder = DatabaseConnection.getItemsInOrder(currentOrder);
-                var valueOfCurrentOrder = getValue(shops, itemsInOrder, currentOrder, currentLocation);
-
-                if (valueOfCurrentOrder > maxValue) {
-                    maxValue = valueOfCurrentOrder;
-                    highestValueOrderIdx = i;
-                    highestValueOrder = currentOrder;
-                }
+    protected static Queue<Order> getOrdersInLine(MenuCatalogue catalogue, List<Order> orders, Location currentLocation) {
+        for (Order order : orders) {
+            //Orders given with their items only are completed here.
+            if (order.getShopsInOrder() == null) {
+                order.precompute(catalogue);
             }
-
-            assert highestValueOrder != null;
-            currentLocation = highestValueOrder.getDeliveryLocation();
-            ordersInLine.add(highestValueOrder);
-            orders.remove(highestValueOrderIdx);
         }
-
-        return ordersInLine;
+        return new OrderScheduler(orders, currentLocation).getOrdersInLine();
     }
 
 
@@ -336,10 +277,8 @@ public class Utils {
      *
      * @return the list of Location objects that represent the locations that
      * the drone needs to visit in indexed order to execute the particular order
-     *
-     * @throws InterruptedException
      */
-    protected static List<Location> getGoalLocationsForOrder(Order order, List<Shop> shopsInOrder, Location currentLocation) throws InterruptedException {
+    protected static List<Location> getGoalLocationsForOrder(Order order, List<Shop> shopsInOrder, Location currentLocation) {
         List<Location> goalLocationsForOrder = new ArrayList<>();
         //List<Shop> shopsInOrder = order.getShopsInOrder();
         if (shopsInOrder.size() == 1) {
@@ -0,0 +1,273 @@
+package uk.ac.ed.inf;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Session-scoped cache of What3Words resolutions so that every What3Words
+ * address is only requested from the web server once per run.
+ * The cache is bounded and evicts the least recently used address
+ * when it is full. Concurrent lookups of the same address share a
+ * single request to the server.
+ */
+public class WordsAddressCache {
+
+    //Resolved locations in least recently used order.
+    private static final Map<String, Location> resolved =
+            new LinkedHashMap<>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, Location> eldest) {
+                    if (size() > Constants.WORDS_CACHE_CAPACITY) {
+                        evictions.increment();
+                        return true;
+                    }
+                    return false;
+                }
+            };
+    //Lookups that are currently waiting for the web server.
+    private static final Map<String, CompletableFuture<Location>> inFlight = new ConcurrentHashMap<>();
+
+    //Where the addresses that are not cached are resolved.
+    private static volatile MapDataSource dataSource;
+
+    private static final LongAdder hits = new LongAdder();
+    private static final LongAdder misses = new LongAdder();
+    private static final LongAdder evictions = new LongAdder();
+
+    /**
+     * Returns the location of the What3Words address given as argument,
+     * requesting it from the web server only if it has not been resolved
+     * before.
+     *
+     * @param words What3Words address
+     * @return location the What3Words address corresponds to
+     *
+     * @throws IllegalStateException if the server has no details for the address
+     */
+    protected static Location getLocation(String words) {
+        Location location = getIfPresent(words);
+        if (location != null) {
+            return location;
+        }
+
+        CompletableFuture<Location> request = new CompletableFuture<>();
+        CompletableFuture<Location> pending = inFlight.putIfAbsent(words, request);
+        if (pending != null) {
+            //Another thread is already resolving the address so we wait for its result.
+            hits.increment();
+            return pending.join();
+        }
+        try {
+            //The address may have been resolved while we were registering our request.
+            location = getIfPresent(words);
+            if (location == null) {
+                misses.increment();
+                location = resolve(words);
+                put(words, location);
+            }
+            request.complete(location);
+            return location;
+        } catch (RuntimeException e) {
+            request.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(words);
+        }
+    }
+
+    /**
+     * Resolves every given What3Words address that is not cached yet,
+     * sending all the requests at once instead of one after the other,
+     * with at most the given number of them waiting for an answer at any
+     * time. Returns once every address has been resolved. Addresses that
+     * could not be resolved are not cached, so they are requested again,
+     * and the error reported, when they are first needed.
+     *
+     * @param addresses     What3Words addresses, possibly repeated
+     * @param maxConcurrent maximum number of requests waiting at a time
+     * @return number of addresses requested, time taken and percentiles
+     *         of the time each request took
+     */
+    protected static String prefetch(Collection<String> addresses, int maxConcurrent) {
+        long start = System.nanoTime();
+        Semaphore permits = new Semaphore(maxConcurrent);
+        List<CompletableFuture<Void>> requests = new ArrayList<>();
+        long[] latencies = new long[addresses.size()];
+        LongAdder failures = new LongAdder();
+        for (String words : new LinkedHashSet<>(addresses)) {
+            if (isCached(words)) continue;
+            MapDataSource source = getDataSource(words);
+            CompletableFuture<Location> request = new CompletableFuture<>();
+            if (inFlight.putIfAbsent(words, request) != null) {
+                //Another thread is already resolving the address.
+                continue;
+            }
+            permits.acquireUninterruptibly();
+            misses.increment();
+            int index = requests.size();
+            long sent = System.nanoTime();
+            CompletableFuture<WordsAddress> response;
+            try {
+                response = source.getWordsAddressAsync(words);
+            } catch (RuntimeException e) {
+                response = CompletableFuture.failedFuture(e);
+            }
+            requests.add(response.handle((address, error) -> {
+                latencies[index] = System.nanoTime() - sent;
+                permits.release();
+                try {
+                    if (error != null) throw new IllegalStateException("Could not resolve " + words, error);
+                    Location location = toLocation(words, address);
+                    put(words, location);
+                    request.complete(location);
+                } catch (RuntimeException e) {
+                    failures.increment();
+                    request.completeExceptionally(e);
+                } finally {
+                    inFlight.remove(words);
+                }
+                return null;
+            }));
+        }
+        CompletableFuture.allOf(requests.toArray(new CompletableFuture<?>[0])).join();
+
+        long[] sorted = Arrays.copyOf(latencies, requests.size());
+        Arrays.sort(sorted);
+        return "What3Words prefetch: " + requests.size() + " addresses (" + failures.sum() + " failed) in "
+                + String.format("%.1f", (System.nanoTime() - start) / 1e6) + " ms, at most " + maxConcurrent
+                + " at a time, latency p50 " + percentile(sorted, 0.5) + " ms, p90 " + percentile(sorted, 0.9)
+                + " ms, p99 " + percentile(sorted, 0.99) + " ms, max " + percentile(sorted, 1) + " ms";
+    }
+
+    /**
+     * Adds the location of a What3Words address to the cache.
+     *
+     * @param words    What3Words address
+     * @param location location the What3Words address corresponds to
+     */
+    protected static void put(String words, Location location) {
+        synchronized (resolved) {
+            resolved.put(words, location);
+        }
+    }
+
+    /**
+     * Loads the resolutions saved by a previous run so that the cache
+     * starts warm. Nothing is loaded if the file does not exist.
+     *
+     * @param snapshot file written by saveSnapshot
+     */
+    protected static void loadSnapshot(Path snapshot) {
+        if (!Files.exists(snapshot)) {
+            return;
+        }
+        try (BufferedReader reader = Files.newBufferedReader(snapshot)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] fields = line.split(" ");
+                if (fields.length == 3) {
+                    put(fields[0], new Location(Double.parseDouble(fields[1]), Double.parseDouble(fields[2])));
+                }
+            }
+        } catch (IOException | NumberFormatException e) {
+            Log.error("What3Words snapshot " + snapshot + " could not be read", e);
+        }
+    }
+
+    /**
+     * Writes every resolution currently in the cache to the given file,
+     * one "words longitude latitude" entry per line.
+     *
+     * @param snapshot file to write the resolutions to
+     */
+    protected static void saveSnapshot(Path snapshot) {
+        try (BufferedWriter writer = Files.newBufferedWriter(snapshot)) {
+            synchronized (resolved) {
+                for (Map.Entry<String, Location> entry : resolved.entrySet()) {
+                    writer.write(entry.getKey() + " " + entry.getValue().getLongitude()
+                            + " " + entry.getValue().getLatitude());
+                    writer.newLine();
+                }
+            }
+        } catch (IOException e) {
+            Log.error("What3Words snapshot " + snapshot + " could not be written", e);
+        }
+    }
+
+    /**
+     * @return hit, miss and eviction counts of the cache.
+     */
+    protected static String getStatistics() {
+        int size;
+        synchronized (resolved) {
+            size = resolved.size();
+        }
+        return "What3Words cache: " + size + " entries, " + hits.sum() + " hits, "
+                + misses.sum() + " misses, " + evictions.sum() + " evictions";
+    }
+
+    /**
+     * Sets where the addresses that are not cached are resolved.
+     *
+     * @param source the web server or a local snapshot of its data
+     */
+    protected static void setDataSource(MapDataSource source) {
+        dataSource = source;
+    }
+
+    private static boolean isCached(String words) {
+        synchronized (resolved) {
+            return resolved.containsKey(words);
+        }
+    }
+
+    private static String percentile(long[] sortedNanos, double fraction) {
+        if (sortedNanos.length == 0) return "-";
+        int rank = (int) Math.ceil(fraction * sortedNanos.length);
+        return String.format("%.1f", sortedNanos[Math.max(rank, 1) - 1] / 1e6);
+    }
+
+    private static MapDataSource getDataSource(String words) {
+        MapDataSource source = dataSource;
+        if (source == null) {
+            throw new IllegalStateException("No data source to resolve What3Words address " + words + " from");
+        }
+        return source;
+    }
+
+    private static Location getIfPresent(String words) {
+        Location location;
+        synchronized (resolved) {
+            location = resolved.get(words);
+        }
+        if (location != null) {
+            hits.increment();
+        }
+        return location;
+    }
+
+    private static Location resolve(String words) {
+        return toLocation(words, getDataSource(words).getWordsAddress(words));
+    }
+
+    private static Location toLocation(String words, WordsAddress address) {
+        if (address == null || address.coordinates == null) {
+            throw new IllegalStateException("No details found for What3Words address " + words);
+        }
+        return new Location(address.coordinates.lng, address.coordinates.lat);
+    }
+}
@@ -0,0 +1,65 @@
+package uk.ac.ed.inf;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures checking whether a move crosses a no-fly zone, by testing every
+ * zone in turn and through the spatial index. Each call checks the next of
+ * a fixed set of random moves anywhere in the confinement area.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CollisionBenchmark {
+
+    private static final int MOVES = 1024;
+
+    private MapData map;
+    private Location[] starts;
+    private Location[] ends;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        map = new SyntheticMap(42, 0).getMapData();
+        Random random = new Random(7);
+        starts = new Location[MOVES];
+        ends = new Location[MOVES];
+        for (int i = 0; i < MOVES; i++) {
+            //Random start locations, which may be inside a zone, and a move in a random direction.
+            double lng = Constants.LONGITUDE_WEST_BOUNDARY
+                    + random.nextDouble() * (Constants.LONGITUDE_EAST_BOUNDARY - Constants.LONGITUDE_WEST_BOUNDARY);
+            double lat = Constants.LATITUDE_SOUTH_BOUNDARY
+                    + random.nextDouble() * (Constants.LATITUDE_NORTH_BOUNDARY - Constants.LATITUDE_SOUTH_BOUNDARY);
+            int direction = random.nextInt(Utils.DIRECTIONS);
+            starts[i] = new Location(lng, lat);
+            ends[i] = new Location(lng + Utils.MOVE_LNG[direction], lat + Utils.MOVE_LAT[direction]);
+        }
+    }
+
+    @Benchmark
+    public boolean everyZone() {
+        next = (next + 1) & (MOVES - 1);
+        return Utils.doesIntersectWithNoFlyZones(map.getNoFlyZones(), starts[next], ends[next]);
+    }
+
+    @Benchmark
+    public boolean zoneIndex() {
+        next = (next + 1) & (MOVES - 1);
+        return Utils.doesIntersectWithNoFlyZones(map.getNoFlyZoneIndex(), starts[next], ends[next]);
+    }
+}
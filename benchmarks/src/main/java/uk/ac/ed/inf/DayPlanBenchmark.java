@@ -0,0 +1,70 @@
+package uk.ac.ed.inf;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures planning the flightpath of a whole day of synthetic orders, from
+ * putting the orders in line to the drone going back to the starting
+ * position. The geojson map is written, but not to a file.
+ *
+ * With cachedLegs false every call starts with an empty cache of planned
+ * legs, as the first date of a run does. With cachedLegs true the cache is
+ * kept between calls, as for the later dates of a batch run.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DayPlanBenchmark {
+
+    @Param({"greedy", "astar"})
+    public String planner;
+
+    @Param({"false", "true"})
+    public boolean cachedLegs;
+
+    @Param({"40"})
+    public int orderCount;
+
+    private SyntheticMap synthetic;
+    private MapData map;
+
+    @Setup(Level.Trial)
+    public void setUpTrial() {
+        synthetic = new SyntheticMap(42, orderCount);
+        IO.options.put("planner", planner);
+        map = synthetic.getMapData();
+    }
+
+    @Setup(Level.Invocation)
+    public void setUpInvocation() {
+        if (!cachedLegs) map = synthetic.newMapData();
+    }
+
+    @Benchmark
+    public BuildFlightpath planDay() throws IOException {
+        BuildFlightpath flightpath = new BuildFlightpath(map, new Date("01", "01", "2022"));
+        List<Order> orders = synthetic.getOrders();
+        flightpath.setUp(orders);
+        flightpath.executeOrders();
+        flightpath.writeGeojsonMap(Writer.nullWriter());
+        return flightpath;
+    }
+}
@@ -0,0 +1,58 @@
+package uk.ac.ed.inf;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures planning a whole leg between two key-locations, without the
+ * cache of planned legs. Each call plans the next leg out of every pair
+ * of the starting position, the shops and the delivery locations.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LegPlanBenchmark {
+
+    @Param({"greedy", "astar"})
+    public String planner;
+
+    private RoutePlanner routePlanner;
+    private List<Location> keyLocations;
+    private int from;
+    private int to = 1;
+
+    @Setup
+    public void setUp() {
+        SyntheticMap synthetic = new SyntheticMap(42, 20);
+        MapData map = synthetic.getMapData();
+        keyLocations = synthetic.getKeyLocations();
+        routePlanner = "astar".equals(planner)
+                ? new AStarPlanner(map.getNoFlyZoneIndex(), Constants.ASTAR_RESOLUTION, Constants.ASTAR_MAX_EXPANSIONS)
+                : new GreedyPlanner(map.getNoFlyZoneIndex(), map.getLandmarks());
+    }
+
+    @Benchmark
+    public List<Move> planLeg() {
+        to++;
+        if (to == keyLocations.size()) {
+            to = 0;
+            from = (from + 1) % keyLocations.size();
+        }
+        if (to == from) to = (to + 1) % keyLocations.size();
+        return routePlanner.planLeg(keyLocations.get(from), keyLocations.get(to));
+    }
+}
@@ -0,0 +1,67 @@
+package uk.ac.ed.inf;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.javatuples.Pair;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures a single step of the greedy planner: listing the moves the drone
+ * can make from a location and choosing the one closest to the goal. Each
+ * call uses the next of a fixed set of random start and goal locations.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MoveGenerationBenchmark {
+
+    private static final int LOCATIONS = 1024;
+
+    private Location[] starts;
+    private Location[] goals;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        SyntheticMap synthetic = new SyntheticMap(42, 0);
+        Random random = new Random(7);
+        starts = new Location[LOCATIONS];
+        goals = new Location[LOCATIONS];
+        for (int i = 0; i < LOCATIONS; i++) {
+            starts[i] = SyntheticMap.randomLocation(random, synthetic.getMapData().getNoFlyZoneIndex());
+            goals[i] = SyntheticMap.randomLocation(random, synthetic.getMapData().getNoFlyZoneIndex());
+        }
+    }
+
+    @Benchmark
+    public List<Pair<Integer, Location>> possibleMoves() {
+        next = (next + 1) & (LOCATIONS - 1);
+        return Utils.getPossibleMoves(starts[next]);
+    }
+
+    @Benchmark
+    public Move optimalMoveFromList() {
+        next = (next + 1) & (LOCATIONS - 1);
+        Location start = starts[next];
+        return Utils.getOptimalMove(start, goals[next], BuildFlightpath.DUMMY_MOVE_NO, Utils.getPossibleMoves(start));
+    }
+
+    @Benchmark
+    public Move optimalMove() {
+        next = (next + 1) & (LOCATIONS - 1);
+        return Utils.getOptimalMove(starts[next], goals[next], BuildFlightpath.DUMMY_MOVE_NO);
+    }
+}
@@ -0,0 +1,162 @@
+package uk.ac.ed.inf;
+
+import com.mapbox.geojson.Feature;
+import com.mapbox.geojson.Point;
+import com.mapbox.geojson.Polygon;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Builds a map for the benchmarks without the web server or the database.
+ * The no-fly zones and landmarks are placed roughly where the real ones are
+ * around George Square, inside the same confinement area, and the shops and
+ * orders are generated from a seed so every run plans the same day.
+ *
+ * The What3Words addresses of the shops and delivery locations are made up
+ * and put straight into the WordsAddressCache. Delivery locations are only
+ * kept if the greedy planner can fly between them, the shops and the
+ * starting position, so a whole day can be planned without failing.
+ * Only warnings and errors are logged while the benchmarks run.
+ */
+public class SyntheticMap {
+
+    private static final int SHOP_COUNT = 8;
+    private static final int ITEMS_PER_SHOP = 6;
+
+    private final MapData map;
+    private final List<Order> orders = new ArrayList<>();
+    //Every location a leg can start or end at: the starting position,
+    // the shops and the delivery locations.
+    private final List<Location> keyLocations = new ArrayList<>();
+
+    /**
+     * Class constructor generating the shops and orders.
+     *
+     * @param seed       seed of the random locations and items
+     * @param orderCount number of orders placed on the day
+     */
+    protected SyntheticMap(long seed, int orderCount) {
+        Log.setLevel("warn");
+        Random random = new Random(seed);
+        List<NoFlyZone> zones = List.of(
+                zone(-3.1906, 55.9428, -3.1890, 55.9436),
+                zone(-3.1878, 55.9434, -3.1860, 55.9440),
+                zone(-3.1880, 55.9450, -3.1866, 55.9457),
+                zone(-3.1914, 55.9446, -3.1903, 55.9453));
+        List<Landmark> landmarks = List.of(landmark(-3.1899, 55.9443), landmark(-3.1862, 55.9446));
+        NoFlyZoneIndex zoneIndex = new NoFlyZoneIndex(zones, Constants.ZONE_INDEX_CELL_SIZE);
+        GreedyPlanner greedy = new GreedyPlanner(zoneIndex, landmarks);
+
+        keyLocations.add(Constants.START_LOCATION);
+        List<Shop> shops = new ArrayList<>();
+        while (shops.size() < SHOP_COUNT) {
+            Location location = randomLocation(random, zoneIndex);
+            if (!reachable(greedy, location, keyLocations)) continue;
+            Shop shop = new Shop();
+            shop.name = "Shop " + shops.size();
+            shop.location = "shop." + shops.size() + ".synthetic";
+            shop.menu = new ArrayList<>();
+            for (int i = 0; i < ITEMS_PER_SHOP; i++) {
+                Shop.ItemAndCost item = new Shop.ItemAndCost();
+                item.item = "item " + shops.size() + "." + i;
+                item.pence = 100 + random.nextInt(20) * 50;
+                shop.menu.add(item);
+            }
+            WordsAddressCache.put(shop.location, location);
+            shops.add(shop);
+            keyLocations.add(location);
+        }
+
+        MenuCatalogue catalogue = new MenuCatalogue(shops);
+        List<Location> shopLocations = new ArrayList<>(keyLocations);
+        while (orders.size() < orderCount) {
+            Location location = randomLocation(random, zoneIndex);
+            if (!reachable(greedy, location, shopLocations)) continue;
+            Order order = new Order();
+            order.setOrderNo(String.format("%08x", orders.size()));
+            order.setDeliveryLocation("delivery." + orders.size() + ".synthetic");
+            WordsAddressCache.put(order.get3WordsAddress(), location);
+            List<String> items = new ArrayList<>();
+            int shopCount = 1 + random.nextInt(2);
+            int firstShop = random.nextInt(SHOP_COUNT);
+            for (int s = 0; s < shopCount; s++) {
+                Shop shop = shops.get((firstShop + s) % SHOP_COUNT);
+                int itemCount = 1 + random.nextInt(2);
+                for (int i = 0; i < itemCount; i++) {
+                    items.add(shop.menu.get(random.nextInt(ITEMS_PER_SHOP)).item);
+                }
+            }
+            order.setItemsToBeDelivered(items);
+            order.precompute(catalogue);
+            orders.add(order);
+            keyLocations.add(location);
+        }
+
+        map = new MapData(null, zones, landmarks, shops);
+    }
+
+    /**
+     * @return the zones, landmarks and shops, with a fresh cache of planned legs.
+     */
+    protected MapData newMapData() {
+        return new MapData(null, map.getNoFlyZones(), map.getLandmarks(), map.getShops());
+    }
+
+    /**
+     * @return the zones, landmarks and shops, always with the same cache of planned legs.
+     */
+    protected MapData getMapData() { return this.map; }
+
+    /**
+     * @return the orders placed on the day, with their shops and cost worked out.
+     */
+    protected List<Order> getOrders() { return this.orders; }
+
+    /**
+     * @return the starting position, the shop locations and the delivery locations.
+     */
+    protected List<Location> getKeyLocations() { return this.keyLocations; }
+
+    /**
+     * Returns a random location in the confinement area outside the no-fly zones.
+     *
+     * @param random    the source of random numbers
+     * @param zoneIndex spatial index of the no-fly zones
+     * @return location outside the zones
+     */
+    protected static Location randomLocation(Random random, NoFlyZoneIndex zoneIndex) {
+        while (true) {
+            double lng = Constants.LONGITUDE_WEST_BOUNDARY + 0.0002 + random.nextDouble()
+                    * (Constants.LONGITUDE_EAST_BOUNDARY - Constants.LONGITUDE_WEST_BOUNDARY - 0.0004);
+            double lat = Constants.LATITUDE_SOUTH_BOUNDARY + 0.0002 + random.nextDouble()
+                    * (Constants.LATITUDE_NORTH_BOUNDARY - Constants.LATITUDE_SOUTH_BOUNDARY - 0.0004);
+            //A point is outside every zone if a tiny segment on it does not intersect any.
+            if (!zoneIndex.intersects(lng, lat, lng + 1e-9, lat)) {
+                return new Location(lng, lat);
+            }
+        }
+    }
+
+    private static boolean reachable(GreedyPlanner greedy, Location location, List<Location> others) {
+        try {
+            for (Location other : others) {
+                greedy.planLeg(location, other);
+                greedy.planLeg(other, location);
+            }
+            return true;
+        } catch (IllegalStateException e) {
+            return false;
+        }
+    }
+
+    private static NoFlyZone zone(double west, double south, double east, double north) {
+        List<Point> ring = List.of(Point.fromLngLat(west, south), Point.fromLngLat(east, south),
+                Point.fromLngLat(east, north), Point.fromLngLat(west, north), Point.fromLngLat(west, south));
+        return new NoFlyZone(Feature.fromGeometry(Polygon.fromLngLats(List.of(ring))));
+    }
+
+    private static Landmark landmark(double lng, double lat) {
+        return new Landmark(Feature.fromGeometry(Point.fromLngLat(lng, lat)));
+    }
+}